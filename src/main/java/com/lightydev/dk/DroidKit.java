@@ -23,6 +23,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 
 import com.lightydev.dk.concurrent.CpuCoreExecutor;
+import com.lightydev.dk.concurrent.IoExecutor;
 import com.lightydev.dk.io.ByteArrayPool;
 import com.lightydev.dk.io.CharArrayPool;
 
@@ -38,6 +39,13 @@ public final class DroidKit {
 
   public static final Executor EXECUTOR = new CpuCoreExecutor();
 
+  /**
+   * Executor for blocking network and disk I/O, keep decoding and parsing on {@link #EXECUTOR}.
+   *
+   * @since 2.4.0
+   */
+  public static final Executor IO_EXECUTOR = new IoExecutor();
+
   private static final AtomicBoolean DEBUG_MODE = new AtomicBoolean();
 
   private static final AtomicInteger SEQUENCE = new AtomicInteger(9000);
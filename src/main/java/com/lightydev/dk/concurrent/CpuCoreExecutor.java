@@ -16,19 +16,15 @@
 
 package com.lightydev.dk.concurrent;
 
-import com.lightydev.dk.util.Reflect;
-
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author =Troy= <Daniel Serdyukov>
  */
-public class CpuCoreExecutor extends ThreadPoolExecutor {
+public class CpuCoreExecutor extends PriorityExecutor {
 
   private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
 
@@ -41,53 +37,7 @@ public class CpuCoreExecutor extends ThreadPoolExecutor {
   }
 
   public CpuCoreExecutor(BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory) {
-    super(CPU_COUNT + 1, CPU_COUNT * 2 + 1, 10, TimeUnit.SECONDS, workQueue, threadFactory);
-  }
-
-  @Override
-  public void execute(Runnable command) {
-    if (command instanceof Comparable) {
-      super.execute(command);
-    } else {
-      super.execute(new ComparableTask(command));
-    }
-  }
-
-  private static final class ComparableTask implements Runnable, Comparable<ComparableTask> {
-
-    private final Runnable mDelegate;
-
-    ComparableTask(Runnable delegate) {
-      mDelegate = delegate;
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (!Reflect.classEquals(this, o)) {
-        return false;
-      }
-      final ComparableTask another = (ComparableTask) o;
-      return !(mDelegate != null ? !mDelegate.equals(another.mDelegate) : another.mDelegate != null);
-    }
-
-    @Override
-    public int hashCode() {
-      return mDelegate != null ? mDelegate.hashCode() : 0;
-    }
-
-    @Override
-    public int compareTo(ComparableTask another) {
-      return 0;
-    }
-
-    @Override
-    public void run() {
-      mDelegate.run();
-    }
-
+    super(CPU_COUNT + 1, CPU_COUNT * 2 + 1, 10, workQueue, threadFactory);
   }
 
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.concurrent;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Elastic pool for blocking network and disk I/O. It starts with a small core, {@link PriorityExecutor}
+ * raises the core up to the pool size while tasks are waiting and idle threads stop after a while,
+ * so waiting on a socket never takes a CPU-bound thread.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public class IoExecutor extends PriorityExecutor {
+
+  public static final int DEFAULT_POOL_SIZE = 16;
+
+  public static final int DEFAULT_CORE_POOL_SIZE = 4;
+
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  public IoExecutor() {
+    this(DEFAULT_POOL_SIZE);
+  }
+
+  public IoExecutor(int poolSize) {
+    this(poolSize, new PriorityBlockingQueue<Runnable>(256), Executors.defaultThreadFactory());
+  }
+
+  public IoExecutor(int poolSize, BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory) {
+    this(Math.min(DEFAULT_CORE_POOL_SIZE, poolSize), poolSize, workQueue, threadFactory);
+  }
+
+  public IoExecutor(int corePoolSize, int maxPoolSize, BlockingQueue<Runnable> workQueue,
+                    ThreadFactory threadFactory) {
+    super(corePoolSize, maxPoolSize, KEEP_ALIVE_SECONDS, workQueue, threadFactory);
+    allowCoreThreadTimeOut(true);
+  }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.concurrent;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Pool over a priority queue. Tasks of the same {@link Comparable} type run in their natural order,
+ * everything else runs in submission order.
+ * <p/>
+ * A priority queue is unbounded, so {@link ThreadPoolExecutor} never starts more than the core
+ * threads on its own. This pool raises the core size while tasks are waiting, up to the max pool
+ * size, and lowers it back once the queue drains. A bounded capacity can be set with
+ * {@link #setQueueCapacity(int)}, tasks over it go to the {@link java.util.concurrent.RejectedExecutionHandler}.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public class PriorityExecutor extends ThreadPoolExecutor {
+
+  public static final int WAIT_HISTOGRAM_SIZE = 16;
+
+  private static final AtomicLong SEQUENCE = new AtomicLong();
+
+  private final AtomicLongArray mWaitHistogram = new AtomicLongArray(WAIT_HISTOGRAM_SIZE);
+
+  private final AtomicInteger mQueueCapacity = new AtomicInteger(Integer.MAX_VALUE);
+
+  private final int mBaseCorePoolSize;
+
+  public PriorityExecutor(int corePoolSize, int maxPoolSize, long keepAliveSeconds,
+                          BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory) {
+    super(corePoolSize, maxPoolSize, keepAliveSeconds, TimeUnit.SECONDS, workQueue, threadFactory);
+    mBaseCorePoolSize = corePoolSize;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    if (getQueue().size() >= mQueueCapacity.get()) {
+      getRejectedExecutionHandler().rejectedExecution(command, this);
+      return;
+    }
+    super.execute(new PriorityTask(command, SEQUENCE.incrementAndGet()));
+    if (getActiveCount() >= getCorePoolSize() && !getQueue().isEmpty()) {
+      grow();
+    }
+  }
+
+  public void setQueueCapacity(int capacity) {
+    mQueueCapacity.set(capacity);
+  }
+
+  /**
+   * @return true if every core thread is busy and tasks are waiting in the queue
+   */
+  public boolean isSaturated() {
+    return getActiveCount() >= getCorePoolSize() && !getQueue().isEmpty();
+  }
+
+  /**
+   * @return number of tasks by the time they spent in the queue, bucket n holds waits
+   * shorter than 2^n ms, the last one holds the rest
+   */
+  public long[] getWaitHistogram() {
+    final long[] histogram = new long[WAIT_HISTOGRAM_SIZE];
+    for (int i = 0; i < WAIT_HISTOGRAM_SIZE; ++i) {
+      histogram[i] = mWaitHistogram.get(i);
+    }
+    return histogram;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" +
+        "active=" + getActiveCount() + "/" + getCorePoolSize() + "/" + getMaximumPoolSize() +
+        ", pool=" + getPoolSize() +
+        ", largest=" + getLargestPoolSize() +
+        ", queued=" + getQueue().size() +
+        ", completed=" + getCompletedTaskCount() +
+        ", wait-ms=" + formatWaitHistogram() +
+        '}';
+  }
+
+  @Override
+  protected void beforeExecute(Thread t, Runnable r) {
+    super.beforeExecute(t, r);
+    if (r instanceof PriorityTask) {
+      final long waitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ((PriorityTask) r).mEnqueueTime);
+      final int bucket = 64 - Long.numberOfLeadingZeros(waitMs);
+      mWaitHistogram.incrementAndGet(Math.min(bucket, WAIT_HISTOGRAM_SIZE - 1));
+    }
+  }
+
+  @Override
+  protected void afterExecute(Runnable r, Throwable t) {
+    super.afterExecute(r, t);
+    if (getQueue().isEmpty() && getCorePoolSize() > mBaseCorePoolSize) {
+      shrink();
+    }
+  }
+
+  private synchronized void grow() {
+    if (getCorePoolSize() < getMaximumPoolSize()) {
+      setCorePoolSize(getCorePoolSize() + 1);
+    }
+  }
+
+  private synchronized void shrink() {
+    if (getCorePoolSize() > mBaseCorePoolSize) {
+      setCorePoolSize(mBaseCorePoolSize);
+    }
+  }
+
+  private String formatWaitHistogram() {
+    final StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < WAIT_HISTOGRAM_SIZE; ++i) {
+      if (i > 0) {
+        sb.append(' ');
+      }
+      sb.append(mWaitHistogram.get(i));
+    }
+    return sb.append(']').toString();
+  }
+
+  private static final class PriorityTask implements Runnable, Comparable<PriorityTask> {
+
+    private final Runnable mDelegate;
+
+    private final long mSequence;
+
+    private final long mEnqueueTime = System.nanoTime();
+
+    PriorityTask(Runnable delegate, long sequence) {
+      mDelegate = delegate;
+      mSequence = sequence;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (mSequence ^ (mSequence >>> 32));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compareTo(PriorityTask another) {
+      if (mDelegate instanceof Comparable && mDelegate.getClass() == another.mDelegate.getClass()) {
+        final int result = ((Comparable<Object>) mDelegate).compareTo(another.mDelegate);
+        if (result != 0) {
+          return result;
+        }
+      }
+      if (mSequence < another.mSequence) {
+        return -1;
+      }
+      return mSequence == another.mSequence ? 0 : 1;
+    }
+
+    @Override
+    public void run() {
+      mDelegate.run();
+    }
+
+  }
+
+}
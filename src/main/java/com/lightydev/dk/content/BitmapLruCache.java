@@ -40,12 +40,13 @@ public final class BitmapLruCache {
   }
 
   public Bitmap put(String key, Bitmap bitmap) {
+    BitmapPool.getInstance().onCached(bitmap);
     return mLruCache.put(key, bitmap);
   }
 
   @Override
   public String toString() {
-    return mLruCache.toString();
+    return mLruCache.toString() + " " + BitmapPool.getInstance();
   }
 
   private interface LruCacheImpl {
@@ -83,6 +84,13 @@ public final class BitmapLruCache {
       return img.getHeight() * img.getRowBytes();
     }
 
+    @Override
+    protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+      if (oldValue != newValue) {
+        BitmapPool.getInstance().onEvicted(oldValue);
+      }
+    }
+
   }
 
   @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
@@ -98,6 +106,13 @@ public final class BitmapLruCache {
       return img.getByteCount();
     }
 
+    @Override
+    protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+      if (oldValue != newValue) {
+        BitmapPool.getInstance().onEvicted(oldValue);
+      }
+    }
+
   }
 
 }
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.content;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte-bounded pool of mutable bitmaps that decoders reuse through {@link BitmapFactory.Options#inBitmap}.
+ * Bitmaps are bucketed by allocation size. Before KitKat a bitmap is reused only for a decode of the same
+ * dimensions without subsampling; since KitKat any bitmap whose allocation is large enough will do.
+ * <p/>
+ * {@link BitmapLruCache} offers its evictions to the pool, but a bitmap is only reused once every holder
+ * has let go of it. Holders such as {@link com.lightydev.dk.widget.DkImageView} {@link #acquire(Bitmap)}
+ * a bitmap while they show it and {@link #release(Bitmap)} it on detach or rebind. Bitmaps that were never
+ * acquired, or that were handed to an observer that does not count references, are never reused.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public final class BitmapPool {
+
+  /**
+   * Reusing a much larger allocation would pin memory the decode does not need.
+   */
+  private static final int MAX_OVERSIZE = 4;
+
+  private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+
+  /**
+   * Weakly keyed, the reference state of a bitmap nobody pools goes away with the bitmap.
+   */
+  private final WeakHashMap<Bitmap, Lease> mLeases = new WeakHashMap<>();
+
+  private final AtomicLong mHitCount = new AtomicLong();
+
+  private final AtomicLong mMissCount = new AtomicLong();
+
+  private final AtomicLong mRecycledBytes = new AtomicLong();
+
+  private long mMaxSize;
+
+  private long mSize;
+
+  BitmapPool(long maxSize) {
+    mMaxSize = maxSize;
+  }
+
+  public static BitmapPool getInstance() {
+    return Holder.INSTANCE;
+  }
+
+  static int getByteCount(Bitmap bitmap) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+      return getAllocationByteCount(bitmap);
+    }
+    return bitmap.getRowBytes() * bitmap.getHeight();
+  }
+
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  private static int getAllocationByteCount(Bitmap bitmap) {
+    return bitmap.getAllocationByteCount();
+  }
+
+  private static int getBytesPerPixel(Bitmap.Config config) {
+    if (config == Bitmap.Config.ALPHA_8) {
+      return 1;
+    } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+      return 2;
+    }
+    return 4;
+  }
+
+  private static boolean canReuse(Bitmap candidate, int width, int height, Bitmap.Config config) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+      return candidate.getConfig() == config;
+    }
+    return candidate.getWidth() == width && candidate.getHeight() == height && candidate.getConfig() == config;
+  }
+
+  /**
+   * Before KitKat only unsampled, unscaled JPEG and PNG decodes write into an existing bitmap.
+   */
+  private static boolean canReuseLegacy(BitmapFactory.Options ops) {
+    return ops.inSampleSize <= 1 && !isDensityScaled(ops)
+        && (ImageHeaderParser.JPEG.equals(ops.outMimeType) || ImageHeaderParser.PNG.equals(ops.outMimeType));
+  }
+
+  private static boolean isDensityScaled(BitmapFactory.Options ops) {
+    return ops.inScaled && ops.inDensity > 0 && ops.inTargetDensity > 0 && ops.inDensity != ops.inTargetDensity;
+  }
+
+  /**
+   * @return an upper bound of the decoded dimension, rounding the subsample up like the decoders do
+   */
+  private static int getDecodedSize(int size, BitmapFactory.Options ops) {
+    final int sampleSize = Math.max(1, ops.inSampleSize);
+    final int sampled = (size + sampleSize - 1) / sampleSize;
+    if (isDensityScaled(ops)) {
+      return (int) (sampled * ((float) ops.inTargetDensity / ops.inDensity) + 0.5f);
+    }
+    return sampled;
+  }
+
+  public synchronized void setMaxSize(long maxSize) {
+    mMaxSize = maxSize;
+    trimToSize(mMaxSize);
+  }
+
+  /**
+   * Counts a holder that shows the bitmap, the pool won't reuse it until it is released.
+   */
+  public synchronized void acquire(Bitmap bitmap) {
+    if (bitmap != null) {
+      getLease(bitmap).acquire();
+    }
+  }
+
+  /**
+   * Drops a holder, an evicted bitmap goes to the pool once the last holder is gone.
+   */
+  public void release(Bitmap bitmap) {
+    if (bitmap == null) {
+      return;
+    }
+    synchronized (this) {
+      final Lease lease = mLeases.get(bitmap);
+      if (lease == null || !lease.release() || !lease.isEvicted()) {
+        return;
+      }
+    }
+    reuseEvicted(bitmap);
+  }
+
+  /**
+   * Marks a bitmap that went to a holder which doesn't count references, it is never reused.
+   */
+  public synchronized void pin(Bitmap bitmap) {
+    if (bitmap != null) {
+      getLease(bitmap).pin();
+    }
+  }
+
+  /**
+   * Offers a bitmap the caller owns and nobody else shows for reuse.
+   */
+  public void put(Bitmap bitmap) {
+    if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null) {
+      return;
+    }
+    final int byteCount = getByteCount(bitmap);
+    synchronized (this) {
+      if (byteCount > mMaxSize) {
+        return;
+      }
+      ArrayDeque<Bitmap> bucket = mBuckets.get(byteCount);
+      if (bucket == null) {
+        bucket = new ArrayDeque<>();
+        mBuckets.put(byteCount, bucket);
+      }
+      bucket.offerLast(bitmap);
+      mSize += byteCount;
+      trimToSize(mMaxSize);
+    }
+  }
+
+  /**
+   * @return a pooled bitmap a decode of the given size and config can be written into, or null
+   */
+  public Bitmap get(int width, int height, Bitmap.Config config) {
+    final int byteCount = width * height * getBytesPerPixel(config);
+    final Bitmap bitmap = poll(width, height, config, byteCount);
+    if (bitmap == null) {
+      mMissCount.incrementAndGet();
+    } else {
+      mHitCount.incrementAndGet();
+      mRecycledBytes.addAndGet(byteCount);
+    }
+    return bitmap;
+  }
+
+  /**
+   * Makes the decode produce a mutable bitmap and hands it a pooled one to decode into, if there is one.
+   * Expects the bounds, {@link BitmapFactory.Options#inSampleSize} and the density scaling to be set.
+   */
+  public void prepare(BitmapFactory.Options ops) {
+    ops.inMutable = true;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT || canReuseLegacy(ops)) {
+      final Bitmap.Config config = ops.inPreferredConfig == null ? Bitmap.Config.ARGB_8888 : ops.inPreferredConfig;
+      ops.inBitmap = get(getDecodedSize(ops.outWidth, ops), getDecodedSize(ops.outHeight, ops), config);
+    }
+  }
+
+  synchronized void onCached(Bitmap bitmap) {
+    final Lease lease = mLeases.get(bitmap);
+    if (lease != null) {
+      lease.setEvicted(false);
+    }
+  }
+
+  void onEvicted(Bitmap bitmap) {
+    synchronized (this) {
+      final Lease lease = mLeases.get(bitmap);
+      if (lease == null) {
+        return;
+      }
+      lease.setEvicted(true);
+      if (lease.isHeld()) {
+        return;
+      }
+    }
+    reuseEvicted(bitmap);
+  }
+
+  public synchronized void clear() {
+    mBuckets.clear();
+    mSize = 0;
+  }
+
+  public synchronized long getSize() {
+    return mSize;
+  }
+
+  public double getHitRate() {
+    final long hits = mHitCount.get();
+    final long total = hits + mMissCount.get();
+    return total > 0 ? (double) hits / total : 0;
+  }
+
+  public long getRecycledBytes() {
+    return mRecycledBytes.get();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "BitmapPool{"
+        + "size=" + mSize
+        + ", maxSize=" + mMaxSize
+        + ", hitRate=" + getHitRate()
+        + ", recycledBytes=" + mRecycledBytes.get()
+        + '}';
+  }
+
+  private Lease getLease(Bitmap bitmap) {
+    Lease lease = mLeases.get(bitmap);
+    if (lease == null) {
+      lease = new Lease();
+      mLeases.put(bitmap, lease);
+    }
+    return lease;
+  }
+
+  private void reuseEvicted(Bitmap bitmap) {
+    synchronized (this) {
+      final Lease lease = mLeases.get(bitmap);
+      if (lease == null || lease.isPinned() || lease.isHeld() || !lease.isEvicted()) {
+        return;
+      }
+      mLeases.remove(bitmap);
+    }
+    put(bitmap);
+  }
+
+  private synchronized Bitmap poll(int width, int height, Bitmap.Config config, int byteCount) {
+    final Map<Integer, ArrayDeque<Bitmap>> candidates = mBuckets.subMap(byteCount, true,
+        byteCount * MAX_OVERSIZE, true);
+    for (final Iterator<ArrayDeque<Bitmap>> buckets = candidates.values().iterator(); buckets.hasNext(); ) {
+      final ArrayDeque<Bitmap> bucket = buckets.next();
+      for (final Iterator<Bitmap> bitmaps = bucket.iterator(); bitmaps.hasNext(); ) {
+        final Bitmap bitmap = bitmaps.next();
+        if (canReuse(bitmap, width, height, config)) {
+          bitmaps.remove();
+          if (bucket.isEmpty()) {
+            buckets.remove();
+          }
+          mSize -= getByteCount(bitmap);
+          return bitmap;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Drops the largest bitmaps first, a single one frees the most memory.
+   */
+  private void trimToSize(long maxSize) {
+    while (mSize > maxSize && !mBuckets.isEmpty()) {
+      final Map.Entry<Integer, ArrayDeque<Bitmap>> largest = mBuckets.lastEntry();
+      largest.getValue().pollFirst();
+      mSize -= largest.getKey();
+      if (largest.getValue().isEmpty()) {
+        mBuckets.remove(largest.getKey());
+      }
+    }
+  }
+
+  private static final class Holder {
+
+    private static final BitmapPool INSTANCE = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
+
+  }
+
+  /**
+   * Guarded by the pool.
+   */
+  private static final class Lease {
+
+    private int mRefs;
+
+    private boolean mPinned;
+
+    private boolean mEvicted;
+
+    void acquire() {
+      ++mRefs;
+    }
+
+    /**
+     * @return true if this was the last holder
+     */
+    boolean release() {
+      if (mRefs > 0) {
+        --mRefs;
+        return mRefs == 0;
+      }
+      return false;
+    }
+
+    boolean isHeld() {
+      return mRefs > 0;
+    }
+
+    void pin() {
+      mPinned = true;
+    }
+
+    boolean isPinned() {
+      return mPinned;
+    }
+
+    boolean isEvicted() {
+      return mEvicted;
+    }
+
+    void setEvicted(boolean evicted) {
+      mEvicted = evicted;
+    }
+
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.content;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+
+import com.lightydev.dk.io.IOUtils;
+import com.lightydev.dk.log.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Image data that can be read more than once, for a bounds pass followed by a full or region decode.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ */
+abstract class BitmapSource {
+
+  static BitmapSource fromFile(String filePath) {
+    return new FileSource(filePath);
+  }
+
+  static BitmapSource fromByteArray(byte[] data) {
+    return new ByteArraySource(data);
+  }
+
+  /**
+   * Reads the dimensions from the image header, or runs a bounds decode if the format is unknown.
+   *
+   * @return false if the data is not an image the decoders understand
+   */
+  boolean readBounds(BitmapFactory.Options ops) {
+    InputStream stream = null;
+    try {
+      stream = open();
+      if (new ImageHeaderParser(stream).parse(ops)) {
+        return true;
+      }
+    } catch (IOException e) {
+      Logger.quiet("%s", e);
+    } finally {
+      IOUtils.closeQuietly(stream);
+    }
+    ops.inJustDecodeBounds = true;
+    decode(ops);
+    ops.inJustDecodeBounds = false;
+    return ops.outWidth > 0 && ops.outHeight > 0;
+  }
+
+  /**
+   * Decodes into a pooled bitmap if the options carry one, falls back to a fresh allocation when
+   * the decoder rejects it and returns the rejected bitmap to the pool.
+   */
+  Bitmap decodeReusing(BitmapFactory.Options ops) {
+    try {
+      return decode(ops);
+    } catch (IllegalArgumentException e) {
+      Logger.quiet("%s", e);
+      BitmapPool.getInstance().put(ops.inBitmap);
+      ops.inBitmap = null;
+      return decode(ops);
+    }
+  }
+
+  abstract InputStream open() throws IOException;
+
+  abstract Bitmap decode(BitmapFactory.Options ops);
+
+  abstract BitmapRegionDecoder newRegionDecoder() throws IOException;
+
+  private static final class FileSource extends BitmapSource {
+
+    private final String mFilePath;
+
+    FileSource(String filePath) {
+      mFilePath = filePath;
+    }
+
+    @Override
+    InputStream open() throws IOException {
+      return new FileInputStream(mFilePath);
+    }
+
+    @Override
+    Bitmap decode(BitmapFactory.Options ops) {
+      return BitmapFactory.decodeFile(mFilePath, ops);
+    }
+
+    @Override
+    BitmapRegionDecoder newRegionDecoder() throws IOException {
+      return BitmapRegionDecoder.newInstance(mFilePath, false);
+    }
+
+  }
+
+  private static final class ByteArraySource extends BitmapSource {
+
+    private final byte[] mData;
+
+    ByteArraySource(byte[] data) {
+      mData = data;
+    }
+
+    @Override
+    InputStream open() {
+      return new ByteArrayInputStream(mData);
+    }
+
+    @Override
+    Bitmap decode(BitmapFactory.Options ops) {
+      return BitmapFactory.decodeByteArray(mData, 0, mData.length, ops);
+    }
+
+    @Override
+    BitmapRegionDecoder newRegionDecoder() throws IOException {
+      return BitmapRegionDecoder.newInstance(mData, 0, mData.length, false);
+    }
+
+  }
+
+}
@@ -16,16 +16,18 @@
 
 package com.lightydev.dk.content;
 
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.media.ExifInterface;
 
 import com.lightydev.dk.io.IOUtils;
-import com.lightydev.dk.io.PoolInputStream;
 import com.lightydev.dk.log.Logger;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -34,8 +36,6 @@ import java.io.InputStream;
  */
 public final class Bitmaps {
 
-  private static final int BITMAP_HEAD = 1024;
-
   private static final double LN_2 = Math.log(2);
 
   private Bitmaps() {
@@ -43,16 +43,22 @@ public final class Bitmaps {
 
   public static Bitmap decodeFile(String filePath, int hwSize) {
     if (hwSize > 0) {
-      final BitmapFactory.Options ops = new BitmapFactory.Options();
-      ops.inJustDecodeBounds = true;
-      BitmapFactory.decodeFile(filePath, ops);
-      ops.inSampleSize = calculateInSampleSize(ops, hwSize);
-      ops.inJustDecodeBounds = false;
-      return BitmapFactory.decodeFile(filePath, ops);
+      return decodeSampled(BitmapSource.fromFile(filePath), hwSize);
     }
     return BitmapFactory.decodeFile(filePath);
   }
 
+  /**
+   * Decodes the image scaled down to the exact target size: {@link ScaleType#FIT} keeps the whole image
+   * inside width x height, {@link ScaleType#CENTER_CROP} fills width x height and crops the overflow.
+   * Images are never scaled up.
+   *
+   * @since 2.4.0
+   */
+  public static Bitmap decodeFile(String filePath, int width, int height, ScaleType scaleType) {
+    return decode(BitmapSource.fromFile(filePath), width, height, scaleType);
+  }
+
   public static Bitmap decodeFileWithExif(String filePath, int hwSize) {
     final Bitmap bitmap = decodeFile(filePath, hwSize);
     final int orientation = getExifOrientation(filePath);
@@ -75,28 +81,72 @@ public final class Bitmaps {
     return decodeStream(stream, null, hwSize);
   }
 
+  /**
+   * Reads the dimensions from the image header, so the stream is decoded once. Formats the header
+   * parser does not know are buffered in memory and decoded from there. A stream can't be read again
+   * if the decoder rejects a pooled bitmap, so it is decoded into a fresh one.
+   */
   public static Bitmap decodeStream(InputStream stream, Rect outPadding, int hwSize) {
     if (hwSize > 0) {
-      final InputStream localIn = new PoolInputStream(stream);
+      final ImageHeaderParser parser = new ImageHeaderParser(stream);
       try {
         final BitmapFactory.Options ops = new BitmapFactory.Options();
-        ops.inJustDecodeBounds = true;
-        localIn.mark(BITMAP_HEAD);
-        BitmapFactory.decodeStream(localIn, outPadding, ops);
-        ops.inSampleSize = calculateInSampleSize(ops, hwSize);
-        ops.inJustDecodeBounds = false;
-        localIn.reset();
-        return BitmapFactory.decodeStream(localIn, outPadding, ops);
+        if (parser.parse(ops)) {
+          ops.inSampleSize = calculateInSampleSize(ops, hwSize);
+          return BitmapFactory.decodeStream(parser.getReplayStream(), outPadding, ops);
+        }
+        return decodeBuffered(IOUtils.toByteArray(parser.getReplayStream()), outPadding, hwSize);
       } catch (IOException e) {
         Logger.error(e);
       } finally {
-        IOUtils.closeQuietly(localIn);
+        IOUtils.closeQuietly(stream);
       }
       return null;
     }
     return BitmapFactory.decodeStream(stream);
   }
 
+  /**
+   * @since 2.4.0
+   */
+  public static Bitmap decodeByteArray(byte[] data, int hwSize) {
+    if (hwSize > 0) {
+      return decodeSampled(BitmapSource.fromByteArray(data), hwSize);
+    }
+    return BitmapFactory.decodeByteArray(data, 0, data.length);
+  }
+
+  /**
+   * @see #decodeFile(String, int, int, ScaleType)
+   * @since 2.4.0
+   */
+  public static Bitmap decodeByteArray(byte[] data, int width, int height, ScaleType scaleType) {
+    return decode(BitmapSource.fromByteArray(data), width, height, scaleType);
+  }
+
+  /**
+   * Fitted images of a known format are decoded in a single pass, everything else is buffered first.
+   *
+   * @see #decodeFile(String, int, int, ScaleType)
+   * @since 2.4.0
+   */
+  public static Bitmap decodeStream(InputStream stream, int width, int height, ScaleType scaleType) {
+    final ImageHeaderParser parser = new ImageHeaderParser(stream);
+    try {
+      final BitmapFactory.Options ops = new BitmapFactory.Options();
+      if (scaleType == ScaleType.FIT && parser.parse(ops)) {
+        setScale(ops, getScale(ops, width, height, scaleType));
+        return resetDensity(BitmapFactory.decodeStream(parser.getReplayStream(), null, ops), ops);
+      }
+      return decodeByteArray(IOUtils.toByteArray(parser.getReplayStream()), width, height, scaleType);
+    } catch (IOException e) {
+      Logger.error(e);
+    } finally {
+      IOUtils.closeQuietly(stream);
+    }
+    return null;
+  }
+
   public static int calculateInSampleSize(BitmapFactory.Options ops, int hwSize) {
     final int outHeight = ops.outHeight;
     final int outWidth = ops.outWidth;
@@ -110,6 +160,168 @@ public final class Bitmaps {
     return 1;
   }
 
+  private static Bitmap decodeSampled(BitmapSource source, int hwSize) {
+    final BitmapFactory.Options ops = new BitmapFactory.Options();
+    source.readBounds(ops);
+    ops.inSampleSize = calculateInSampleSize(ops, hwSize);
+    BitmapPool.getInstance().prepare(ops);
+    return source.decodeReusing(ops);
+  }
+
+  private static Bitmap decode(BitmapSource source, int width, int height, ScaleType scaleType) {
+    final BitmapFactory.Options ops = new BitmapFactory.Options();
+    if (!source.readBounds(ops)) {
+      return null;
+    }
+    if (scaleType == ScaleType.CENTER_CROP) {
+      return decodeCrop(source, ops, width, height);
+    }
+    setScale(ops, getScale(ops, width, height, scaleType));
+    BitmapPool.getInstance().prepare(ops);
+    return resetDensity(source.decodeReusing(ops), ops);
+  }
+
+  /**
+   * Decodes just the visible part of the image through {@link BitmapRegionDecoder}, or the whole image
+   * if the format has no region decoder, and scales it to width x height.
+   */
+  private static Bitmap decodeCrop(BitmapSource source, BitmapFactory.Options ops, int width, int height) {
+    final float scale = getScale(ops, width, height, ScaleType.CENTER_CROP);
+    final int cropWidth = Math.min(ops.outWidth, Math.round(width / scale));
+    final int cropHeight = Math.min(ops.outHeight, Math.round(height / scale));
+    final int left = (ops.outWidth - cropWidth) / 2;
+    final int top = (ops.outHeight - cropHeight) / 2;
+    final Rect region = new Rect(left, top, left + cropWidth, top + cropHeight);
+    final int outWidth = Math.max(1, Math.round(cropWidth * scale));
+    final int outHeight = Math.max(1, Math.round(cropHeight * scale));
+    final Bitmap bitmap = decodeRegion(source, ops.outMimeType, region, scale);
+    if (bitmap != null) {
+      return cropScaled(bitmap, new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight()), outWidth, outHeight);
+    }
+    final int sourceWidth = ops.outWidth;
+    final int sourceHeight = ops.outHeight;
+    ops.inSampleSize = getSampleSize(scale);
+    BitmapPool.getInstance().prepare(ops);
+    final Bitmap full = source.decodeReusing(ops);
+    if (full == null) {
+      return null;
+    }
+    final float sx = (float) full.getWidth() / sourceWidth;
+    final float sy = (float) full.getHeight() / sourceHeight;
+    return cropScaled(full, new Rect(
+        (int) (region.left * sx), (int) (region.top * sy),
+        Math.min(full.getWidth(), Math.round(region.right * sx)),
+        Math.min(full.getHeight(), Math.round(region.bottom * sy))
+    ), outWidth, outHeight);
+  }
+
+  private static Bitmap decodeRegion(BitmapSource source, String mimeType, Rect region, float scale) {
+    if (ImageHeaderParser.GIF.equals(mimeType)) {
+      return null;
+    }
+    BitmapRegionDecoder decoder = null;
+    try {
+      decoder = source.newRegionDecoder();
+      final BitmapFactory.Options ops = new BitmapFactory.Options();
+      ops.inSampleSize = getSampleSize(scale);
+      return decoder.decodeRegion(region, ops);
+    } catch (IOException e) {
+      Logger.quiet("%s", e);
+    } finally {
+      if (decoder != null) {
+        decoder.recycle();
+      }
+    }
+    return null;
+  }
+
+  private static Bitmap cropScaled(Bitmap bitmap, Rect region, int width, int height) {
+    if (region.width() == bitmap.getWidth() && region.height() == bitmap.getHeight()
+        && region.width() == width && region.height() == height) {
+      return bitmap;
+    }
+    final Matrix matrix = new Matrix();
+    matrix.setScale((float) width / region.width(), (float) height / region.height());
+    final Bitmap cropped = Bitmap.createBitmap(bitmap, region.left, region.top,
+        region.width(), region.height(), matrix, true);
+    if (cropped != bitmap) {
+      BitmapPool.getInstance().put(bitmap);
+    }
+    return cropped;
+  }
+
+  private static float getScale(BitmapFactory.Options ops, int width, int height, ScaleType scaleType) {
+    final float sx = (float) width / ops.outWidth;
+    final float sy = (float) height / ops.outHeight;
+    if (scaleType == ScaleType.CENTER_CROP) {
+      return Math.min(1f, Math.max(sx, sy));
+    }
+    return Math.min(1f, Math.min(sx, sy));
+  }
+
+  /**
+   * @return the largest power of two subsample that keeps the image at or above the scale
+   */
+  private static int getSampleSize(float scale) {
+    int sampleSize = 1;
+    while (scale * sampleSize * 2 <= 1f) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  /**
+   * Subsamples by a power of two and lets the decoder scale the rest through inDensity/inTargetDensity,
+   * so the decoded bitmap has the target size and no larger intermediate is kept.
+   */
+  private static void setScale(BitmapFactory.Options ops, float scale) {
+    final int sampleSize = getSampleSize(scale);
+    final int size = Math.max(ops.outWidth, ops.outHeight);
+    final int sampled = (size + sampleSize - 1) / sampleSize;
+    final int target = Math.max(1, Math.round(size * scale));
+    ops.inSampleSize = sampleSize;
+    if (target < sampled) {
+      ops.inScaled = true;
+      ops.inDensity = sampled;
+      ops.inTargetDensity = target;
+    }
+  }
+
+  /**
+   * The decoder stamps the target density on a density scaled bitmap, drawables would scale it again.
+   */
+  private static Bitmap resetDensity(Bitmap bitmap, BitmapFactory.Options ops) {
+    if (bitmap != null && ops.inTargetDensity > 0) {
+      bitmap.setDensity(Resources.getSystem().getDisplayMetrics().densityDpi);
+    }
+    return bitmap;
+  }
+
+  private static Bitmap decodeBuffered(byte[] data, Rect outPadding, int hwSize) throws IOException {
+    final BitmapFactory.Options ops = new BitmapFactory.Options();
+    BitmapSource.fromByteArray(data).readBounds(ops);
+    ops.inSampleSize = calculateInSampleSize(ops, hwSize);
+    BitmapPool.getInstance().prepare(ops);
+    return decodeStreamReusing(new ByteArrayInputStream(data), outPadding, ops);
+  }
+
+  /**
+   * Falls back to a fresh allocation when the decoder rejects the pooled bitmap, which goes back to
+   * the pool.
+   */
+  private static Bitmap decodeStreamReusing(ByteArrayInputStream stream, Rect outPadding,
+                                            BitmapFactory.Options ops) {
+    try {
+      return BitmapFactory.decodeStream(stream, outPadding, ops);
+    } catch (IllegalArgumentException e) {
+      Logger.quiet("%s", e);
+      BitmapPool.getInstance().put(ops.inBitmap);
+      ops.inBitmap = null;
+      stream.reset();
+      return BitmapFactory.decodeStream(stream, outPadding, ops);
+    }
+  }
+
   private static int getExifOrientation(String filePath) {
     try {
       return new ExifInterface(filePath).getAttributeInt(
@@ -134,4 +346,12 @@ public final class Bitmaps {
     return matrix;
   }
 
+  /**
+   * @since 2.4.0
+   */
+  public enum ScaleType {
+    FIT,
+    CENTER_CROP
+  }
+
 }
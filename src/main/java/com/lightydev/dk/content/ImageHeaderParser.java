@@ -0,0 +1,232 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.content;
+
+import android.graphics.BitmapFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+
+/**
+ * Reads image dimensions straight from the JPEG, PNG, WebP or GIF header. The bytes it reads are kept
+ * in a buffer that grows as needed, {@link #getReplayStream()} hands them back to the decoder followed
+ * by the rest of the stream, so the image is decoded once and the stream is never reset.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ */
+final class ImageHeaderParser {
+
+  static final String JPEG = "image/jpeg";
+
+  static final String PNG = "image/png";
+
+  static final String WEBP = "image/webp";
+
+  static final String GIF = "image/gif";
+
+  private static final int INITIAL_CAPACITY = 512;
+
+  /**
+   * JPEG metadata segments are at most 64 KB each, this leaves room for EXIF, ICC profile and XMP.
+   */
+  private static final int MAX_HEADER = 256 * 1024;
+
+  private static final int PNG_SIGNATURE = 0x89504e47;
+
+  private static final int RIFF = 0x52494646;
+
+  private static final int WEBP_FOURCC = 0x57454250;
+
+  private static final int VP8 = 0x56503820;
+
+  private static final int VP8L = 0x5650384c;
+
+  private static final int VP8X = 0x56503858;
+
+  private static final int GIF_SIGNATURE = 0x47494638;
+
+  private final InputStream mIn;
+
+  private byte[] mBuffer = new byte[INITIAL_CAPACITY];
+
+  private int mCount;
+
+  ImageHeaderParser(InputStream in) {
+    mIn = in;
+  }
+
+  private static boolean isStartOfFrame(int marker) {
+    return marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc;
+  }
+
+  private static boolean isStandalone(int marker) {
+    return marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7);
+  }
+
+  /**
+   * Fills {@link BitmapFactory.Options#outWidth}, {@link BitmapFactory.Options#outHeight} and
+   * {@link BitmapFactory.Options#outMimeType}.
+   *
+   * @return false if the format is unknown or the header is malformed
+   */
+  boolean parse(BitmapFactory.Options ops) throws IOException {
+    if (readUInt16BE(0) == 0xffd8) {
+      return parseJpeg(ops);
+    } else if (readInt32BE(0) == PNG_SIGNATURE) {
+      return setBounds(ops, PNG, readInt32BE(16), readInt32BE(20));
+    } else if (readInt32BE(0) == RIFF && readInt32BE(8) == WEBP_FOURCC) {
+      return parseWebp(ops);
+    } else if (readInt32BE(0) == GIF_SIGNATURE) {
+      return setBounds(ops, GIF, readUInt16LE(6), readUInt16LE(8));
+    }
+    return false;
+  }
+
+  /**
+   * @return the bytes read by {@link #parse(BitmapFactory.Options)} followed by the rest of the stream
+   */
+  InputStream getReplayStream() {
+    return new SequenceInputStream(new ByteArrayInputStream(mBuffer, 0, mCount), mIn);
+  }
+
+  private boolean parseJpeg(BitmapFactory.Options ops) throws IOException {
+    int offset = 2;
+    while (offset >= 0) {
+      offset = skipFill(offset);
+      final int marker = offset < 0 ? -1 : readByte(offset + 1);
+      if (isStartOfFrame(marker)) {
+        return setBounds(ops, JPEG, readUInt16BE(offset + 7), readUInt16BE(offset + 5));
+      }
+      offset = nextSegment(offset, marker);
+    }
+    return false;
+  }
+
+  /**
+   * @return the offset of the last 0xff fill byte before the marker, or -1
+   */
+  private int skipFill(int offset) throws IOException {
+    if (readByte(offset) != 0xff) {
+      return -1;
+    }
+    int fill = offset;
+    while (readByte(fill + 1) == 0xff) {
+      ++fill;
+    }
+    return fill;
+  }
+
+  /**
+   * @return the offset of the segment after the marker, or -1 if there are no frame headers left to read
+   */
+  private int nextSegment(int offset, int marker) throws IOException {
+    if (marker < 0 || marker == 0xd9 || marker == 0xda) {
+      return -1;
+    } else if (isStandalone(marker)) {
+      return offset + 2;
+    }
+    final int length = readUInt16BE(offset + 2);
+    return length < 2 ? -1 : offset + 2 + length;
+  }
+
+  private boolean parseWebp(BitmapFactory.Options ops) throws IOException {
+    final int chunk = readInt32BE(12);
+    if (chunk == VP8 && isVp8KeyFrame()) {
+      return setBounds(ops, WEBP, readUInt16LE(26) & 0x3fff, readUInt16LE(28) & 0x3fff);
+    } else if (chunk == VP8L) {
+      return parseVp8l(ops);
+    } else if (chunk == VP8X) {
+      return setBounds(ops, WEBP, 1 + readUInt24LE(24), 1 + readUInt24LE(27));
+    }
+    return false;
+  }
+
+  private boolean isVp8KeyFrame() throws IOException {
+    return readByte(23) == 0x9d && readByte(24) == 0x01 && readByte(25) == 0x2a;
+  }
+
+  private boolean parseVp8l(BitmapFactory.Options ops) throws IOException {
+    if (readByte(20) != 0x2f) {
+      return false;
+    }
+    final int b1 = readByte(21);
+    final int b2 = readByte(22);
+    final int b3 = readByte(23);
+    final int b4 = readByte(24);
+    return b4 >= 0 && setBounds(ops, WEBP,
+        1 + (b1 | (b2 & 0x3f) << 8),
+        1 + ((b2 >> 6) | b3 << 2 | (b4 & 0x0f) << 10));
+  }
+
+  private boolean setBounds(BitmapFactory.Options ops, String mimeType, int width, int height) {
+    if (width <= 0 || height <= 0) {
+      return false;
+    }
+    ops.outWidth = width;
+    ops.outHeight = height;
+    ops.outMimeType = mimeType;
+    return true;
+  }
+
+  private int readInt32BE(int offset) throws IOException {
+    final int hi = readUInt16BE(offset);
+    final int lo = readUInt16BE(offset + 2);
+    return hi < 0 || lo < 0 ? -1 : (hi << 16 | lo);
+  }
+
+  private int readUInt16BE(int offset) throws IOException {
+    final int hi = readByte(offset);
+    final int lo = readByte(offset + 1);
+    return hi < 0 || lo < 0 ? -1 : (hi << 8 | lo);
+  }
+
+  private int readUInt16LE(int offset) throws IOException {
+    final int lo = readByte(offset);
+    final int hi = readByte(offset + 1);
+    return hi < 0 || lo < 0 ? -1 : (hi << 8 | lo);
+  }
+
+  private int readUInt24LE(int offset) throws IOException {
+    final int lo = readUInt16LE(offset);
+    final int hi = readByte(offset + 2);
+    return hi < 0 || lo < 0 ? -1 : (hi << 16 | lo);
+  }
+
+  /**
+   * @return the unsigned byte at the offset, or -1 past the end of the stream or the header limit
+   */
+  private int readByte(int offset) throws IOException {
+    if (offset >= MAX_HEADER) {
+      return -1;
+    }
+    while (offset >= mCount) {
+      if (mCount == mBuffer.length) {
+        mBuffer = Arrays.copyOf(mBuffer, Math.min(mBuffer.length * 2, MAX_HEADER));
+      }
+      final int read = mIn.read(mBuffer, mCount, mBuffer.length - mCount);
+      if (read < 0) {
+        return -1;
+      }
+      mCount += read;
+    }
+    return mBuffer[offset] & 0xff;
+  }
+
+}
@@ -23,30 +23,64 @@ import android.text.TextUtils;
 import android.util.DisplayMetrics;
 import android.widget.ImageView;
 
+import com.lightydev.dk.DroidKit;
+import com.lightydev.dk.http.AsyncHttpEntry;
 import com.lightydev.dk.http.Http;
 import com.lightydev.dk.http.HttpException;
 import com.lightydev.dk.http.HttpUtils;
 import com.lightydev.dk.http.callback.AsyncHttpCallback;
+import com.lightydev.dk.io.IOUtils;
 import com.lightydev.dk.log.Logger;
 import com.lightydev.dk.util.Observable;
 import com.lightydev.dk.util.Observer;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * Requests are shared by all observers of a uri. When the last observer unregisters, the download
+ * is canceled and a decode that has not started yet is skipped.
+ * <p/>
+ * Each request carries a priority class, {@link #PRIORITY_VISIBLE}, {@link #PRIORITY_NEAR} or
+ * {@link #PRIORITY_PREFETCH}. Downloads are ordered by it through {@link AsyncHttpEntry#setPriority(int)}
+ * and decodes on the executor are ordered by it too. {@link #reprioritize(Uri, int)} re-ranks a request
+ * as the user scrolls.
+ *
  * @author =Troy= <Daniel Serdyukov>
  */
 public final class ImageLoader {
 
   public static final String FILE_SCHEME = "file";
 
+  /**
+   * @since 2.4.0
+   */
+  public static final int PRIORITY_VISIBLE = 0;
+
+  /**
+   * Close to the viewport, likely to be visible after a short scroll.
+   *
+   * @since 2.4.0
+   */
+  public static final int PRIORITY_NEAR = -1;
+
+  /**
+   * @since 2.4.0
+   */
+  public static final int PRIORITY_PREFETCH = -2;
+
   public static final List<String> URL_SCHEME = new ArrayList<>();
 
   static {
@@ -56,7 +90,17 @@ public final class ImageLoader {
 
   private static final Map<Uri, Observable<Bitmap>> OBSERVABLES = new ConcurrentHashMap<>();
 
-  private static final Set<Uri> IMAGE_QUEUE = new ConcurrentSkipListSet<>();
+  private static final ConcurrentMap<Uri, ImageRequest> REQUESTS = new ConcurrentHashMap<>();
+
+  private static final Queue<ImageRequest> PAUSED_REQUESTS = new ConcurrentLinkedQueue<>();
+
+  private static final Queue<Runnable> PAUSED_TASKS = new ConcurrentLinkedQueue<>();
+
+  private static final AtomicBoolean PAUSED = new AtomicBoolean();
+
+  private static final AtomicReference<ThumbnailCache> THUMBNAIL_CACHE = new AtomicReference<>();
+
+  private static final String TRANSFORM_SAMPLE = "sample";
 
   private ImageLoader() {
   }
@@ -66,7 +110,7 @@ public final class ImageLoader {
   }
 
   public static void loadImage(Uri uri, ImageView imageView) {
-    registerObserver(uri, new ImageViewBitmapObserver(imageView));
+    registerObserver(uri, new ImageViewBitmapObserver(imageView, uri));
     final int hwSize = Math.max(imageView.getWidth(), imageView.getHeight());
     if (hwSize > 0) {
       loadImage(uri, hwSize);
@@ -80,15 +124,102 @@ public final class ImageLoader {
   }
 
   public static void loadImage(Uri uri, int hwSize) {
+    loadImage(uri, hwSize, PRIORITY_VISIBLE);
+  }
+
+  /**
+   * Loading a uri that is already in flight raises the priority of its request if this one is higher.
+   *
+   * @since 2.4.0
+   */
+  public static void loadImage(Uri uri, int hwSize, int priority) {
     final String scheme = uri.getScheme();
     final String key = HttpUtils.getUrlHash(uri.toString());
     final Bitmap bitmap = BitmapLruCache.getInstance().get(key);
     if (bitmap != null) {
       notifyObservers(uri, bitmap);
-    } else if (TextUtils.equals(FILE_SCHEME, scheme)) {
-      loadFile(uri, key, hwSize);
-    } else if (URL_SCHEME.contains(scheme)) {
-      loadUrl(uri, key, hwSize);
+    } else if (TextUtils.equals(FILE_SCHEME, scheme) || URL_SCHEME.contains(scheme)) {
+      final ImageRequest request = new ImageRequest(uri, key, hwSize, priority);
+      final ImageRequest inFlight = REQUESTS.putIfAbsent(uri, request);
+      if (inFlight == null) {
+        enqueue(request);
+      } else if (inFlight.getPriority() < priority) {
+        inFlight.setPriority(priority);
+      }
+    }
+  }
+
+  /**
+   * Keeps decoded images on disk, so a cold start skips downloading and downsampling the source.
+   *
+   * @param thumbnailCache disk tier for decoded images or null to disable it
+   * @since 2.4.0
+   */
+  public static void setThumbnailCache(ThumbnailCache thumbnailCache) {
+    THUMBNAIL_CACHE.set(thumbnailCache);
+  }
+
+  /**
+   * Holds downloads and decodes back until {@link #resume()}, e.g. while a list is flinging. Work queued
+   * before the call is held when its turn comes, a download already on the wire completes but its decode
+   * is held. Images in the memory cache are still delivered.
+   *
+   * @since 2.4.0
+   */
+  public static void pause() {
+    PAUSED.set(true);
+  }
+
+  /**
+   * @since 2.4.0
+   */
+  public static void resume() {
+    PAUSED.set(false);
+    startPaused();
+  }
+
+  /**
+   * @since 2.4.0
+   */
+  public static boolean isPaused() {
+    return PAUSED.get();
+  }
+
+  /**
+   * Re-ranks the queued download of the uri, e.g. when it scrolls into or out of the viewport. A decode
+   * already queued on the executor keeps the priority it was enqueued with.
+   *
+   * @since 2.4.0
+   */
+  public static void reprioritize(Uri uri, int priority) {
+    final ImageRequest request = REQUESTS.get(uri);
+    if (request != null) {
+      request.setPriority(priority);
+    }
+  }
+
+  /**
+   * @return priority class of a list position given the visible range reported by a scroll listener
+   * @since 2.4.0
+   */
+  public static int getViewportPriority(int position, int firstVisibleItem, int visibleItemCount) {
+    if (position >= firstVisibleItem && position < firstVisibleItem + visibleItemCount) {
+      return PRIORITY_VISIBLE;
+    } else if (position >= firstVisibleItem - visibleItemCount && position < firstVisibleItem + 2 * visibleItemCount) {
+      return PRIORITY_NEAR;
+    }
+    return PRIORITY_PREFETCH;
+  }
+
+  /**
+   * Cancels the download and skips the decode of the uri, its observers get nothing.
+   *
+   * @since 2.4.0
+   */
+  public static void cancel(Uri uri) {
+    final ImageRequest request = REQUESTS.remove(uri);
+    if (request != null) {
+      request.cancel();
     }
   }
 
@@ -96,16 +227,35 @@ public final class ImageLoader {
     getObservableForUri(uri).registerObserver(observer);
   }
 
+  /**
+   * Cancels the request for the uri if this was its last observer.
+   */
   public static void unregisterObserver(Uri uri, Observer<Bitmap> observer) {
-    getObservableForUri(uri).unregisterObserver(observer);
+    final Observable<Bitmap> observable = getObservableForUri(uri);
+    if (observable.unregisterObserver(observer) && !observable.hasObservers()) {
+      cancel(uri);
+    }
   }
 
   public static void unregisterAll(Uri uri) {
     getObservableForUri(uri).unregisterAll();
+    cancel(uri);
   }
 
+  /**
+   * Pins the bitmap in {@link BitmapPool} unless every observer counts its references.
+   */
   public static void notifyObservers(Uri uri, Bitmap bitmap) {
-    getObservableForUri(uri).notifyObservers(bitmap);
+    final Observable<Bitmap> observable = getObservableForUri(uri);
+    if (bitmap != null) {
+      for (final Observer<Bitmap> observer : observable.getObservers()) {
+        if (!(observer instanceof RefCountingObserver)) {
+          BitmapPool.getInstance().pin(bitmap);
+          break;
+        }
+      }
+    }
+    observable.notifyObservers(bitmap);
   }
 
   private static Observable<Bitmap> getObservableForUri(Uri uri) {
@@ -117,19 +267,107 @@ public final class ImageLoader {
     return observable;
   }
 
-  private static void loadFile(Uri uri, String key, int hwSize) {
-    if (IMAGE_QUEUE.add(uri)) {
-      new LoadImageTask(uri, hwSize).execute(uri.getPath(), key);
+  private static void enqueue(ImageRequest request) {
+    if (!holdIfPaused(request)) {
+      start(request);
     }
   }
 
-  private static void loadUrl(Uri uri, String key, int hwSize) {
-    if (IMAGE_QUEUE.add(uri)) {
-      Http.get(uri.toString()).setCallback(new LoadImageCallback(uri, key, hwSize)).send();
+  /**
+   * @return true if the request was held back or already restarted by a concurrent {@link #resume()}
+   */
+  private static boolean holdIfPaused(ImageRequest request) {
+    if (!PAUSED.get()) {
+      return false;
+    }
+    PAUSED_REQUESTS.offer(request);
+    if (!PAUSED.get()) {
+      startPaused();
     }
+    return true;
   }
 
-  private static final class LoadImageCallback implements AsyncHttpCallback {
+  /**
+   * Same as {@link #holdIfPaused(ImageRequest)} for a decode that already holds its data.
+   */
+  private static boolean holdIfPaused(Runnable task) {
+    if (!PAUSED.get()) {
+      return false;
+    }
+    PAUSED_TASKS.offer(task);
+    if (!PAUSED.get()) {
+      startPaused();
+    }
+    return true;
+  }
+
+  /**
+   * Requeues the held back decodes first, they are closest to done, then starts the held back requests
+   * highest priority first.
+   */
+  private static void startPaused() {
+    for (Runnable task = PAUSED_TASKS.poll(); task != null; task = PAUSED_TASKS.poll()) {
+      DroidKit.EXECUTOR.execute(task);
+    }
+    final List<ImageRequest> requests = new ArrayList<>();
+    for (ImageRequest request = PAUSED_REQUESTS.poll(); request != null; request = PAUSED_REQUESTS.poll()) {
+      if (!request.isCanceled()) {
+        requests.add(request);
+      }
+    }
+    Collections.sort(requests);
+    for (final ImageRequest request : requests) {
+      start(request);
+    }
+  }
+
+  private static void start(ImageRequest request) {
+    if (THUMBNAIL_CACHE.get() == null) {
+      loadSource(request);
+    } else {
+      DroidKit.EXECUTOR.execute(new LoadThumbnailTask(request));
+    }
+  }
+
+  private static void loadSource(ImageRequest request) {
+    if (TextUtils.equals(FILE_SCHEME, request.mUri.getScheme())) {
+      new LoadImageTask(request).executeOnExecutor(DroidKit.EXECUTOR, request.mUri.getPath());
+    } else {
+      final AsyncHttpEntry entry = Http.get(request.mUri.toString())
+          .setCallback(new LoadImageCallback(request))
+          .setPriority(request.getPriority());
+      if (request.attach(entry)) {
+        entry.send();
+      }
+    }
+  }
+
+  /**
+   * Caches the decoded image in memory. The thumbnail write is left to the caller, it goes to the I/O
+   * executor once the observers have the image and holds it so the pool doesn't reuse it meanwhile.
+   *
+   * @return the thumbnail write or null
+   */
+  private static Runnable onImageDecoded(ImageRequest request, Bitmap bitmap) {
+    if (bitmap == null) {
+      return null;
+    }
+    BitmapLruCache.getInstance().put(request.mKey, bitmap);
+    final ThumbnailCache thumbnailCache = THUMBNAIL_CACHE.get();
+    if (thumbnailCache == null || request.mHwSize <= 0) {
+      return null;
+    }
+    BitmapPool.getInstance().acquire(bitmap);
+    return new SaveThumbnailTask(thumbnailCache, request, bitmap);
+  }
+
+  private static void saveThumbnail(Runnable task) {
+    if (task != null) {
+      DroidKit.IO_EXECUTOR.execute(task);
+    }
+  }
+
+  private static final class ImageRequest implements Comparable<ImageRequest> {
 
     private final Uri mUri;
 
@@ -137,57 +375,241 @@ public final class ImageLoader {
 
     private final int mHwSize;
 
-    public LoadImageCallback(Uri uri, String key, int hwSize) {
+    private final AtomicInteger mPriority;
+
+    private final AtomicBoolean mCanceled = new AtomicBoolean();
+
+    private final AtomicReference<AsyncHttpEntry> mEntry = new AtomicReference<>();
+
+    ImageRequest(Uri uri, String key, int hwSize, int priority) {
       mUri = uri;
       mKey = key;
       mHwSize = hwSize;
+      mPriority = new AtomicInteger(priority);
+    }
+
+    int getPriority() {
+      return mPriority.get();
+    }
+
+    void setPriority(int priority) {
+      if (mPriority.getAndSet(priority) != priority) {
+        final AsyncHttpEntry entry = mEntry.get();
+        if (entry != null) {
+          entry.setPriority(priority);
+        }
+      }
+    }
+
+    boolean isCanceled() {
+      return mCanceled.get();
+    }
+
+    /**
+     * @return false if the request was canceled and the entry should not be sent
+     */
+    boolean attach(AsyncHttpEntry entry) {
+      mEntry.set(entry);
+      entry.setPriority(mPriority.get());
+      return !mCanceled.get();
+    }
+
+    void cancel() {
+      mCanceled.set(true);
+      final AsyncHttpEntry entry = mEntry.getAndSet(null);
+      if (entry != null) {
+        entry.cancel();
+      }
+    }
+
+    /**
+     * Delivers the result unless the request was canceled, a newer request for the uri may have
+     * observers by now.
+     */
+    void finish(Bitmap bitmap) {
+      mEntry.set(null);
+      REQUESTS.remove(mUri, this);
+      if (!mCanceled.get()) {
+        ImageLoader.notifyObservers(mUri, bitmap);
+      }
+    }
+
+    @Override
+    public int compareTo(ImageRequest another) {
+      return another.mPriority.get() - mPriority.get();
+    }
+
+  }
+
+  private static final class LoadImageCallback implements AsyncHttpCallback {
+
+    private final ImageRequest mRequest;
+
+    public LoadImageCallback(ImageRequest request) {
+      mRequest = request;
     }
 
     @Override
     public void onSuccess(int statusCode, Map<String, String> headers, InputStream content) {
+      if (mRequest.isCanceled()) {
+        return;
+      }
       if (statusCode == HttpURLConnection.HTTP_OK || statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
-        final Bitmap bitmap = Bitmaps.decodeStream(content, mHwSize);
-        if (bitmap != null) {
-          BitmapLruCache.getInstance().put(mKey, bitmap);
+        try {
+          DroidKit.EXECUTOR.execute(new DecodeImageTask(mRequest, IOUtils.toByteArray(content)));
+          return;
+        } catch (IOException e) {
+          Logger.error(e);
         }
-        ImageLoader.notifyObservers(mUri, bitmap);
       }
-      IMAGE_QUEUE.remove(mUri);
+      mRequest.finish(null);
     }
 
     @Override
     public void onError(HttpException e) {
       Logger.error(e);
-      ImageLoader.notifyObservers(mUri, null);
-      IMAGE_QUEUE.remove(mUri);
+      mRequest.finish(null);
+    }
+  }
+
+  /**
+   * Decodes a body buffered on the I/O thread, so decoding never holds a network thread. The priority
+   * is taken when the task is queued, the executor queue is not re-sorted.
+   */
+  private static final class DecodeImageTask implements Runnable, Comparable<DecodeImageTask> {
+
+    private final ImageRequest mRequest;
+
+    private final byte[] mData;
+
+    private final int mPriority;
+
+    DecodeImageTask(ImageRequest request, byte[] data) {
+      mRequest = request;
+      mData = data;
+      mPriority = request.getPriority();
+    }
+
+    @Override
+    public int compareTo(DecodeImageTask another) {
+      return another.mPriority - mPriority;
+    }
+
+    @Override
+    public void run() {
+      if (!mRequest.isCanceled() && !holdIfPaused(this)) {
+        final Bitmap bitmap = Bitmaps.decodeByteArray(mData, mRequest.mHwSize);
+        final Runnable saveThumbnail = onImageDecoded(mRequest, bitmap);
+        mRequest.finish(bitmap);
+        saveThumbnail(saveThumbnail);
+      }
+    }
+
+  }
+
+  /**
+   * Looks the image up in the thumbnail cache and falls back to the source on a miss. Files are
+   * decoded right here, this already runs on the decode executor.
+   */
+  private static final class LoadThumbnailTask implements Runnable, Comparable<LoadThumbnailTask> {
+
+    private final ImageRequest mRequest;
+
+    private final int mPriority;
+
+    LoadThumbnailTask(ImageRequest request) {
+      mRequest = request;
+      mPriority = request.getPriority();
+    }
+
+    @Override
+    public int compareTo(LoadThumbnailTask another) {
+      return another.mPriority - mPriority;
     }
+
+    @Override
+    public void run() {
+      if (mRequest.isCanceled() || holdIfPaused(mRequest)) {
+        return;
+      }
+      final ThumbnailCache thumbnailCache = THUMBNAIL_CACHE.get();
+      final int hwSize = mRequest.mHwSize;
+      final Bitmap bitmap = thumbnailCache == null || hwSize <= 0
+          ? null : thumbnailCache.get(mRequest.mUri, hwSize, hwSize, TRANSFORM_SAMPLE);
+      if (bitmap != null) {
+        BitmapLruCache.getInstance().put(mRequest.mKey, bitmap);
+        mRequest.finish(bitmap);
+      } else if (TextUtils.equals(FILE_SCHEME, mRequest.mUri.getScheme())) {
+        final Bitmap decoded = Bitmaps.decodeFile(mRequest.mUri.getPath(), hwSize);
+        final Runnable saveThumbnail = onImageDecoded(mRequest, decoded);
+        mRequest.finish(decoded);
+        saveThumbnail(saveThumbnail);
+      } else {
+        loadSource(mRequest);
+      }
+    }
+
   }
 
   private static final class LoadImageTask extends AsyncTask<String, Void, Bitmap> {
 
-    private final Uri mUri;
+    private final ImageRequest mRequest;
 
-    private final int mHwSize;
+    private Runnable mSaveThumbnail;
 
-    public LoadImageTask(Uri uri, int hwSize) {
+    private boolean mHeld;
+
+    public LoadImageTask(ImageRequest request) {
       super();
-      mUri = uri;
-      mHwSize = hwSize;
+      mRequest = request;
     }
 
     @Override
     protected Bitmap doInBackground(String... params) {
-      final Bitmap bitmap = Bitmaps.decodeFile(params[0], mHwSize);
-      if (bitmap != null) {
-        BitmapLruCache.getInstance().put(params[1], bitmap);
+      if (mRequest.isCanceled()) {
+        return null;
+      }
+      if (holdIfPaused(mRequest)) {
+        mHeld = true;
+        return null;
       }
+      final Bitmap bitmap = Bitmaps.decodeFile(params[0], mRequest.mHwSize);
+      mSaveThumbnail = onImageDecoded(mRequest, bitmap);
       return bitmap;
     }
 
     @Override
     protected void onPostExecute(Bitmap bitmap) {
-      ImageLoader.notifyObservers(mUri, bitmap);
-      IMAGE_QUEUE.remove(mUri);
+      if (mHeld) {
+        return;
+      }
+      mRequest.finish(bitmap);
+      saveThumbnail(mSaveThumbnail);
+    }
+
+  }
+
+  private static final class SaveThumbnailTask implements Runnable {
+
+    private final ThumbnailCache mThumbnailCache;
+
+    private final ImageRequest mRequest;
+
+    private final Bitmap mBitmap;
+
+    SaveThumbnailTask(ThumbnailCache thumbnailCache, ImageRequest request, Bitmap bitmap) {
+      mThumbnailCache = thumbnailCache;
+      mRequest = request;
+      mBitmap = bitmap;
+    }
+
+    @Override
+    public void run() {
+      try {
+        mThumbnailCache.put(mRequest.mUri, mRequest.mHwSize, mRequest.mHwSize, TRANSFORM_SAMPLE, mBitmap);
+      } finally {
+        BitmapPool.getInstance().release(mBitmap);
+      }
     }
 
   }
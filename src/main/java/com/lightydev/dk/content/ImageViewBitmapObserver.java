@@ -17,41 +17,119 @@
 package com.lightydev.dk.content;
 
 import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.view.View;
 import android.widget.ImageView;
 
 import com.lightydev.dk.util.Observable;
-import com.lightydev.dk.util.Observer;
+
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
+ * Shows the bitmap in a plain {@link ImageView} and holds it in {@link BitmapPool} while the view shows
+ * it. The bitmap is released when the next image is set through the loader or when the view detaches,
+ * a detached view that still showed it is cleared and loads the image again once it is reattached.
+ *
  * @author =Troy= <Daniel Serdyukov>
  */
-class ImageViewBitmapObserver implements Observer<Bitmap> {
+class ImageViewBitmapObserver implements RefCountingObserver {
+
+  /**
+   * Accessed on the main thread only.
+   */
+  private static final Map<ImageView, Binding> BINDINGS = new WeakHashMap<>();
 
   private final ImageView mImageView;
 
+  private final Uri mUri;
+
   private final boolean mAutoUnregister;
 
-  ImageViewBitmapObserver(ImageView imageView) {
-    this(imageView, true);
+  ImageViewBitmapObserver(ImageView imageView, Uri uri) {
+    this(imageView, uri, true);
   }
 
-  ImageViewBitmapObserver(ImageView imageView, boolean autoUnregister) {
+  ImageViewBitmapObserver(ImageView imageView, Uri uri, boolean autoUnregister) {
     mImageView = imageView;
+    mUri = uri;
     mAutoUnregister = autoUnregister;
   }
 
+  private static Binding obtainBinding(ImageView imageView) {
+    Binding binding = BINDINGS.get(imageView);
+    if (binding == null) {
+      binding = new Binding();
+      BINDINGS.put(imageView, binding);
+      imageView.addOnAttachStateChangeListener(binding);
+    }
+    return binding;
+  }
+
   @Override
   public void onChange(Observable<Bitmap> observable, Bitmap bitmap) {
     if (bitmap != null && mAutoUnregister) {
       observable.unregisterObserver(this);
     }
+    BitmapPool.getInstance().acquire(bitmap);
     final Bitmap localBitmap = bitmap;
     mImageView.post(new Runnable() {
       @Override
       public void run() {
-        mImageView.setImageBitmap(localBitmap);
+        obtainBinding(mImageView).show(mImageView, mUri, localBitmap);
       }
     });
   }
 
+  /**
+   * The bitmap a view shows, it references the view only through the listener callbacks.
+   */
+  private static final class Binding implements View.OnAttachStateChangeListener {
+
+    private Uri mUri;
+
+    private Bitmap mBitmap;
+
+    private boolean mPending;
+
+    private static boolean isShowing(ImageView imageView, Bitmap bitmap) {
+      final Drawable drawable = imageView.getDrawable();
+      return drawable instanceof BitmapDrawable && ((BitmapDrawable) drawable).getBitmap() == bitmap;
+    }
+
+    void show(ImageView imageView, Uri uri, Bitmap bitmap) {
+      final Bitmap prevBitmap = mBitmap;
+      mUri = uri;
+      mBitmap = bitmap;
+      mPending = false;
+      imageView.setImageBitmap(bitmap);
+      BitmapPool.getInstance().release(prevBitmap);
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View v) {
+      if (mPending) {
+        mPending = false;
+        ImageLoader.loadImage(mUri, (ImageView) v);
+      }
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+      if (mBitmap == null) {
+        return;
+      }
+      final ImageView imageView = (ImageView) v;
+      if (isShowing(imageView, mBitmap)) {
+        imageView.setImageDrawable(null);
+        mPending = true;
+      }
+      BitmapPool.getInstance().release(mBitmap);
+      mBitmap = null;
+    }
+
+  }
+
 }
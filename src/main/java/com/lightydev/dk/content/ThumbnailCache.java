@@ -0,0 +1,166 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.content;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+
+import com.lightydev.dk.http.cache.CacheStore;
+import com.lightydev.dk.http.cache.DiskCacheStore;
+import com.lightydev.dk.io.IOUtils;
+import com.lightydev.dk.log.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk tier of decoded and resized images, keyed on the source uri, the target size and the transform
+ * that produced them. A cold start decodes the small stored image instead of downsampling the source
+ * again. Entries are compressed to WebP (PNG or JPEG before Jelly Bean MR2) and evicted least recently
+ * used first once the store outgrows its own byte budget.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public final class ThumbnailCache {
+
+  public static final long DEFAULT_MAX_SIZE = 10L * 1024 * 1024;
+
+  private static final int QUALITY = 85;
+
+  private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+  private final AtomicLong mHitCount = new AtomicLong();
+
+  private final AtomicLong mMissCount = new AtomicLong();
+
+  private final DiskCacheStore mStore;
+
+  public ThumbnailCache(File cacheDir) {
+    this(cacheDir, DEFAULT_MAX_SIZE);
+  }
+
+  public ThumbnailCache(File cacheDir, long maxSize) {
+    mStore = new DiskCacheStore(cacheDir, maxSize);
+  }
+
+  private static String getKey(Uri uri, int width, int height, String transform) {
+    return uri + "#" + width + "x" + height + "/" + transform;
+  }
+
+  private static Bitmap.CompressFormat getCompressFormat(Bitmap bitmap) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      return Bitmap.CompressFormat.WEBP;
+    } else if (bitmap.hasAlpha()) {
+      return Bitmap.CompressFormat.PNG;
+    }
+    return Bitmap.CompressFormat.JPEG;
+  }
+
+  private static Bitmap decode(CacheStore.Entry entry) {
+    try {
+      final InputStream content = entry.getContent();
+      final byte[] data;
+      try {
+        data = IOUtils.toByteArray(content);
+      } finally {
+        IOUtils.closeQuietly(content);
+      }
+      return BitmapFactory.decodeByteArray(data, 0, data.length);
+    } catch (IOException e) {
+      Logger.quiet("%s", e);
+      return null;
+    }
+  }
+
+  /**
+   * Blocks on disk I/O and decoding, call it off the main thread.
+   *
+   * @return the stored image or null
+   */
+  public Bitmap get(Uri uri, int width, int height, String transform) {
+    final CacheStore.Entry entry = mStore.get(getKey(uri, width, height, transform));
+    if (entry != null) {
+      final Bitmap bitmap = decode(entry);
+      if (bitmap != null) {
+        mHitCount.incrementAndGet();
+        return bitmap;
+      }
+    }
+    mMissCount.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Compresses and stores the image, blocks on disk I/O.
+   */
+  public void put(Uri uri, int width, int height, String transform, Bitmap bitmap) {
+    final CacheStore.Editor editor = mStore.edit(getKey(uri, width, height, transform), NO_HEADERS);
+    try {
+      final OutputStream out = editor.newOutputStream();
+      final boolean compressed;
+      try {
+        compressed = bitmap.compress(getCompressFormat(bitmap), QUALITY, out);
+      } finally {
+        IOUtils.closeQuietly(out);
+      }
+      if (compressed) {
+        editor.commit();
+      } else {
+        editor.abort();
+      }
+    } catch (IOException e) {
+      Logger.quiet("%s", e);
+      editor.abort();
+    }
+  }
+
+  public boolean clear() {
+    return mStore.clear();
+  }
+
+  public long getSize() {
+    return mStore.getSize();
+  }
+
+  public long getMaxSize() {
+    return mStore.getMaxSize();
+  }
+
+  public double getHitRatio() {
+    final long hits = mHitCount.get();
+    final long total = hits + mMissCount.get();
+    return total > 0 ? (double) hits / total : 0;
+  }
+
+  @Override
+  public String toString() {
+    return "ThumbnailCache{"
+        + "size=" + getSize()
+        + ", maxSize=" + getMaxSize()
+        + ", hitRatio=" + getHitRatio()
+        + '}';
+  }
+
+}
@@ -22,25 +22,39 @@ import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.lightydev.dk.http.body.HttpBody;
+import com.lightydev.dk.http.body.StreamingBody;
 import com.lightydev.dk.http.cache.CachePolicy;
 import com.lightydev.dk.http.cache.CacheStore;
 import com.lightydev.dk.http.callback.AsyncHttpCallback;
+import com.lightydev.dk.http.callback.ProgressCallback;
 import com.lightydev.dk.http.cookie.Cookie;
 import com.lightydev.dk.http.cookie.CookieStore;
 import com.lightydev.dk.io.IOUtils;
+import com.lightydev.dk.io.TeeInputStream;
 import com.lightydev.dk.log.Logger;
+import com.lightydev.dk.os.BackgroundThread;
 import com.lightydev.dk.util.Reflect;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -56,6 +70,14 @@ public class AsyncHttpEntry implements Runnable, Comparable<AsyncHttpEntry> {
 
   static final String DELETE = "DELETE";
 
+  private static final String CONNECTION_CLOSE = "close";
+
+  private static final String REVALIDATE = "REVALIDATE";
+
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+  private static final String ACCEPT_ENCODING = HttpUtils.GZIP + ", " + HttpUtils.DEFLATE;
+
   private final String mMethod;
 
   private final int mSequence;
@@ -76,6 +98,65 @@ public class AsyncHttpEntry implements Runnable, Comparable<AsyncHttpEntry> {
 
   private final AtomicBoolean mCanceled = new AtomicBoolean();
 
+  private final AtomicReference<String> mFlightKey = new AtomicReference<>();
+
+  private final AtomicReference<String> mJoinedFlight = new AtomicReference<>();
+
+  private final AtomicReference<HttpURLConnection> mConnection = new AtomicReference<>();
+
+  private final AtomicReference<HttpFuture> mFuture = new AtomicReference<>();
+
+  private final AtomicBoolean mInline = new AtomicBoolean();
+
+  private final AtomicBoolean mRetryPending = new AtomicBoolean();
+
+  private final AtomicBoolean mRevalidation = new AtomicBoolean();
+
+  private final AtomicLong mRetryDelay = new AtomicLong();
+
+  private final AtomicInteger mConnectTimeout = new AtomicInteger(-1);
+
+  private final AtomicInteger mReadTimeout = new AtomicInteger(-1);
+
+  private final AtomicLong mDeadline = new AtomicLong(-1);
+
+  private final AtomicLong mDeadlineAt = new AtomicLong();
+
+  private final AtomicBoolean mTimedOut = new AtomicBoolean();
+
+  private final AtomicReference<ProgressCallback> mProgressCallback = new AtomicReference<>();
+
+  private final AtomicReference<TokenBucket> mRateLimit = new AtomicReference<>(TokenBucket.UNLIMITED);
+
+  private final Runnable mRetryCmd = new Runnable() {
+    @Override
+    public void run() {
+      Http.Engine.enqueue(AsyncHttpEntry.this);
+    }
+  };
+
+  private final Runnable mDeadlineCmd = new Runnable() {
+    @Override
+    public void run() {
+      mTimedOut.set(true);
+      final HttpURLConnection cn = mConnection.getAndSet(null);
+      if (cn != null) {
+        cn.disconnect();
+      }
+    }
+  };
+
+  private final Runnable mFollowerDeadlineCmd = new Runnable() {
+    @Override
+    public void run() {
+      final String flightKey = mJoinedFlight.getAndSet(null);
+      if (flightKey != null && Http.Engine.getCoalescer().leave(flightKey, AsyncHttpEntry.this)
+          && !mCanceled.get()) {
+        deliverError(new HttpException(HttpException.TIMEOUT, mUrl + " deadline exceeded in flight"));
+      }
+    }
+  };
+
   private String mUrl;
 
   public AsyncHttpEntry(String method, String url, int sequence) {
@@ -126,37 +207,126 @@ public class AsyncHttpEntry implements Runnable, Comparable<AsyncHttpEntry> {
   }
 
   public AsyncHttpEntry setPriority(int priority) {
-    mPriority.set(priority);
+    if (mPriority.getAndSet(priority) != priority) {
+      Http.Engine.reprioritize(this);
+    }
+    return this;
+  }
+
+  /**
+   * @param timeout connect timeout in milliseconds, overrides the engine default
+   * @since 2.4.0
+   */
+  public AsyncHttpEntry setConnectTimeout(int timeout) {
+    mConnectTimeout.set(timeout);
+    return this;
+  }
+
+  /**
+   * @param timeout read timeout in milliseconds, overrides the engine default
+   * @since 2.4.0
+   */
+  public AsyncHttpEntry setReadTimeout(int timeout) {
+    mReadTimeout.set(timeout);
+    return this;
+  }
+
+  /**
+   * Limits the time from {@link #send()} to the delivered result, including the time in the queue
+   * and between retries. Requests past the deadline fail with {@link HttpException#TIMEOUT}.
+   *
+   * @param deadline milliseconds, overrides the engine default, 0 means no deadline
+   * @since 2.4.0
+   */
+  public AsyncHttpEntry setDeadline(long deadline) {
+    mDeadline.set(deadline);
+    return this;
+  }
+
+  /**
+   * @param callback receives download progress of the response body on the main thread
+   * @since 2.4.0
+   */
+  public AsyncHttpEntry setProgressCallback(ProgressCallback callback) {
+    mProgressCallback.set(callback);
+    return this;
+  }
+
+  /**
+   * @param bytesPerSecond download rate of this request, 0 removes the limit
+   * @since 2.4.0
+   */
+  public AsyncHttpEntry setRateLimit(long bytesPerSecond) {
+    mRateLimit.set(new TokenBucket(bytesPerSecond));
     return this;
   }
 
   public void send() {
     mCanceled.set(false);
-    Http.Engine.enqueue(this);
+    startDeadline();
+    dispatch();
+  }
+
+  /**
+   * Sends the request and returns a future holding the response status code. Canceling the future
+   * cancels the request and aborts a socket read that is in progress.
+   *
+   * @since 2.4.0
+   */
+  public Future<Integer> submit() {
+    final HttpFuture future = new HttpFuture(this);
+    mFuture.set(future);
+    send();
+    return future;
+  }
+
+  /**
+   * Runs the request inline on the calling thread, including retries, and delivers the result to
+   * the callback before returning.
+   *
+   * @return response status code or -1 on error
+   * @since 2.4.0
+   */
+  public int execute() {
+    mCanceled.set(false);
+    mInline.set(true);
+    startDeadline();
+    try {
+      int statusCode;
+      do {
+        statusCode = perform();
+      } while (awaitInlineRetry());
+      return statusCode;
+    } finally {
+      mInline.set(false);
+    }
   }
 
   public void cancel() {
-    mCanceled.compareAndSet(false, true);
+    if (mCanceled.compareAndSet(false, true)) {
+      final HttpFuture future = mFuture.get();
+      if (future != null) {
+        future.setCanceled();
+      }
+      final HttpURLConnection cn = mConnection.getAndSet(null);
+      if (cn != null) {
+        cn.disconnect();
+      }
+      synchronized (mCanceled) {
+        mCanceled.notifyAll();
+      }
+    }
   }
 
   @Override
   public void run() {
     Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
-    if (!mCanceled.get()) {
-      final long start = SystemClock.uptimeMillis();
-      final int statusCode;
-      if (mCachePolicy.get().ignoreCache(mUrl)) {
-        statusCode = performNetworkRequest(null, -1);
-      } else {
-        if (Http.Engine.getCacheStore().contains(mUrl)) {
-          statusCode = performCacheRequest();
-        } else {
-          statusCode = performNetworkRequest(null, -1);
-        }
-      }
-      if (Http.Engine.isInDebugMode()) {
-        Logger.debug("%s [%s] in %d ms.", this, HttpStatus.getLine(statusCode), (SystemClock.uptimeMillis() - start));
-      }
+    if (mCanceled.get()) {
+      resendFollowers();
+    } else if (getRemainingTime() <= 0) {
+      onError(new HttpException(HttpException.TIMEOUT, mUrl + " deadline exceeded in queue"));
+    } else {
+      perform();
     }
   }
 
@@ -195,6 +365,25 @@ public class AsyncHttpEntry implements Runnable, Comparable<AsyncHttpEntry> {
     return "#" + mSequence + " " + mMethod + " " + mUrl;
   }
 
+  String getHost() {
+    final String host = Uri.parse(mUrl).getHost();
+    if (host == null) {
+      return "";
+    }
+    return host;
+  }
+
+  /**
+   * Fails the request and its followers without a retry, the executor refused to run it.
+   */
+  void onRejected(RejectedExecutionException e) {
+    if (mCanceled.get()) {
+      resendFollowers();
+    } else {
+      failFlight(new HttpException(HttpException.UNKNOWN, mUrl + " rejected by the executor", e));
+    }
+  }
+
   private void appendBodyToUrl(HttpBody body) {
     if (mUrl.contains(HttpBody.QUERY_SEPARATOR)) {
       mUrl += (HttpBody.PARAMETER_SEPARATOR + body);
@@ -203,54 +392,293 @@ public class AsyncHttpEntry implements Runnable, Comparable<AsyncHttpEntry> {
     }
   }
 
+  /**
+   * Sends the request again without restarting its deadline, e.g. a follower whose leader failed.
+   */
+  private void dispatch() {
+    if (mJoinedFlight.getAndSet(null) != null) {
+      BackgroundThread.getHandler().removeCallbacks(mFollowerDeadlineCmd);
+    }
+    if (joinFlight()) {
+      Http.Engine.enqueue(this);
+    }
+  }
+
+  private int perform() {
+    final long start = SystemClock.uptimeMillis();
+    final int statusCode;
+    if (mCachePolicy.get().ignoreCache(mUrl)) {
+      statusCode = performNetworkRequest(null);
+    } else {
+      if (Http.Engine.getCacheStore().contains(mUrl)) {
+        statusCode = performCacheRequest();
+      } else {
+        statusCode = performNetworkRequest(null);
+      }
+    }
+    if (Http.Engine.isInDebugMode()) {
+      Logger.debug("%s [%s] in %d ms.", this, HttpStatus.getLine(statusCode), (SystemClock.uptimeMillis() - start));
+    }
+    return statusCode;
+  }
+
+  /**
+   * Background revalidations fly apart from the request that serves the stale entry, it still leads
+   * its own flight and would hand them the cached body.
+   */
+  private boolean joinFlight() {
+    if (TextUtils.equals(GET, mMethod) && Http.Engine.isRequestCoalescingEnabled()) {
+      final String flightKey = (mRevalidation.get() ? REVALIDATE : mMethod) + " " + mUrl + " "
+          + new TreeMap<>(mHeaders);
+      if (Http.Engine.getCoalescer().join(flightKey, this)) {
+        mFlightKey.set(flightKey);
+        return true;
+      }
+      awaitFlight(flightKey);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * A follower never runs on its own while it waits, so its deadline is watched here. Only this follower
+   * fails when it passes, the leader and the other followers go on.
+   */
+  private void awaitFlight(String flightKey) {
+    final long remaining = getRemainingTime();
+    if (remaining != Long.MAX_VALUE) {
+      mJoinedFlight.set(flightKey);
+      BackgroundThread.getHandler().removeCallbacks(mFollowerDeadlineCmd);
+      BackgroundThread.getHandler().postDelayed(mFollowerDeadlineCmd, Math.max(0, remaining));
+    }
+  }
+
+  private List<AsyncHttpEntry> completeFlight() {
+    final String flightKey = mFlightKey.getAndSet(null);
+    if (flightKey == null) {
+      return Collections.emptyList();
+    }
+    return Http.Engine.getCoalescer().complete(flightKey);
+  }
+
+  private void resendFollowers() {
+    for (final AsyncHttpEntry follower : completeFlight()) {
+      if (!follower.mCanceled.get()) {
+        follower.dispatch();
+      }
+    }
+  }
+
   private HttpURLConnection openConnection(String url) throws IOException {
-    final HttpURLConnection cn = (HttpURLConnection) new URL(HttpUtils.toAsciiUrl(url)).openConnection();
+    final HttpURLConnection cn = Http.Engine.getConnectionPool().open(new URL(HttpUtils.toAsciiUrl(url)));
     cn.setRequestMethod(mMethod);
+    cn.setConnectTimeout(getTimeout(mConnectTimeout.get(), Http.Engine.getConnectTimeout()));
+    cn.setReadTimeout(getTimeout(mReadTimeout.get(), Http.Engine.getReadTimeout()));
     return cn;
   }
 
+  private int getTimeout(int timeout, int defaultTimeout) {
+    final int value = timeout >= 0 ? timeout : defaultTimeout;
+    final long remaining = getRemainingTime();
+    if (remaining == Long.MAX_VALUE) {
+      return value;
+    } else if (value == 0) {
+      return (int) Math.max(1, Math.min(remaining, Integer.MAX_VALUE));
+    }
+    return (int) Math.max(1, Math.min(remaining, value));
+  }
+
+  private void startDeadline() {
+    final long deadline = mDeadline.get() >= 0 ? mDeadline.get() : Http.Engine.getDeadline();
+    mDeadlineAt.set(deadline > 0 ? SystemClock.elapsedRealtime() + deadline : 0);
+  }
+
+  private long getRemainingTime() {
+    final long deadlineAt = mDeadlineAt.get();
+    if (deadlineAt == 0) {
+      return Long.MAX_VALUE;
+    }
+    return deadlineAt - SystemClock.elapsedRealtime();
+  }
+
+  private HttpException newNetworkError(IOException e) {
+    if (mTimedOut.getAndSet(false) || e instanceof SocketTimeoutException) {
+      return new HttpException(HttpException.TIMEOUT, mUrl, e);
+    }
+    return new HttpException(HttpException.NETWORK, mUrl, e);
+  }
+
   private int performCacheRequest() {
     final CacheStore.Entry cacheEntry = Http.Engine.getCacheStore().get(mUrl);
     if (cacheEntry == null) {
-      return performNetworkRequest(null, -1);
-    } else if (cacheEntry.isExpired()) {
-      return performNetworkRequest(cacheEntry.getETag(), cacheEntry.getLastModified());
-    } else {
-      try {
-        onSuccessIfCallbackExists(
-            HttpURLConnection.HTTP_NOT_MODIFIED,
-            Collections.<String, String>emptyMap(),
-            cacheEntry.getContent()
-        );
-        return HttpURLConnection.HTTP_NOT_MODIFIED;
-      } catch (IOException e) {
-        onError(new HttpException(HttpException.CACHE, mUrl, e));
-      }
+      return performNetworkRequest(null);
+    } else if (!cacheEntry.isExpired()) {
+      return onCacheHit(cacheEntry);
+    } else if (!mRevalidation.get() && TextUtils.equals(GET, mMethod) && cacheEntry.canRevalidateInBackground()) {
+      revalidateInBackground();
+      return onCacheHit(cacheEntry);
+    }
+    return performNetworkRequest(cacheEntry);
+  }
+
+  private int onCacheHit(CacheStore.Entry cacheEntry) {
+    try {
+      onSuccessIfCallbackExists(
+          HttpURLConnection.HTTP_NOT_MODIFIED,
+          Collections.<String, String>emptyMap(),
+          cacheEntry.getContent()
+      );
+      return HttpURLConnection.HTTP_NOT_MODIFIED;
+    } catch (IOException e) {
+      onError(new HttpException(HttpException.CACHE, mUrl, e));
     }
     return -1;
   }
 
-  private int performNetworkRequest(String etag, long lastModified) {
+  private void revalidateInBackground() {
+    final AsyncHttpEntry revalidation = Http.get(mUrl)
+        .addHeaders(mHeaders)
+        .setCachePolicy(mCachePolicy.get())
+        .setPriority(mPriority.get() - 1);
+    revalidation.mRevalidation.set(true);
+    revalidation.send();
+  }
+
+  private boolean canServeStale(CacheStore.Entry cacheEntry) {
+    return cacheEntry != null && !mCanceled.get() && cacheEntry.canServeOnError();
+  }
+
+  private int performNetworkRequest(CacheStore.Entry cacheEntry) {
+    final long openMillis = Http.Engine.getCircuitBreaker().getOpenMillis(getHost(), this);
+    if (openMillis > 0) {
+      return failFast(cacheEntry, openMillis);
+    }
+    try {
+      return performConnection(cacheEntry);
+    } finally {
+      Http.Engine.getCircuitBreaker().onFinished(getHost(), this);
+    }
+  }
+
+  private int performConnection(CacheStore.Entry cacheEntry) {
     try {
       final HttpURLConnection cn = openConnection(mUrl);
+      boolean reusable = false;
+      mConnection.set(cn);
+      if (mCanceled.get() && mConnection.compareAndSet(cn, null)) {
+        cn.disconnect();
+        throw new InterruptedIOException(mUrl + " canceled");
+      }
+      mTimedOut.set(false);
+      if (mDeadlineAt.get() > 0) {
+        BackgroundThread.getHandler().postDelayed(mDeadlineCmd, getRemainingTime());
+      }
       try {
         setConnectionCookies(cn);
-        setConnectionHeaders(cn, etag, lastModified);
+        if (cacheEntry == null) {
+          setConnectionHeaders(cn, null, -1);
+        } else {
+          setConnectionHeaders(cn, cacheEntry.getETag(), cacheEntry.getLastModified());
+        }
         sendBodyIfExists(cn);
-        return onSuccess(cn.getResponseCode(), HttpUtils.readHeaders(cn), HttpUtils.readContent(cn));
+        final Map<String, String> headers = HttpUtils.readHeaders(cn);
+        final int statusCode = onResponse(cn.getResponseCode(), headers, readContent(cn, headers), cacheEntry);
+        reusable = !CONNECTION_CLOSE.equalsIgnoreCase(headers.get(Http.Header.CONNECTION));
+        return statusCode;
       } finally {
-        cn.disconnect();
+        BackgroundThread.getHandler().removeCallbacks(mDeadlineCmd);
+        if (mConnection.compareAndSet(cn, null)) {
+          Http.Engine.getConnectionPool().release(cn, reusable);
+        }
       }
     } catch (IOException e) {
-      onError(new HttpException(HttpException.NETWORK, mUrl, e));
+      if (!mCanceled.get()) {
+        Http.Engine.getCircuitBreaker().onFailure(getHost());
+      }
+      if (canServeStale(cacheEntry)) {
+        return onCacheHit(cacheEntry);
+      }
+      onError(newNetworkError(e));
     }
     return -1;
   }
 
+  private InputStream readContent(HttpURLConnection cn, Map<String, String> headers) {
+    final InputStream content = HttpUtils.readContent(cn);
+    final List<TokenBucket> buckets = new ArrayList<>(3);
+    addRateLimit(buckets, mRateLimit.get());
+    addRateLimit(buckets, Http.Engine.getRateLimit(mPriority.get()));
+    addRateLimit(buckets, Http.Engine.getRateLimit());
+    if (buckets.isEmpty() && mProgressCallback.get() == null) {
+      return content;
+    }
+    return new ProgressInputStream(content, parseContentLength(headers), buckets, mProgressCallback.get());
+  }
+
+  private static void addRateLimit(List<TokenBucket> buckets, TokenBucket bucket) {
+    if (bucket != null && bucket.getRate() > 0) {
+      buckets.add(bucket);
+    }
+  }
+
+  private static long parseContentLength(Map<String, String> headers) {
+    try {
+      return Long.parseLong(headers.get(Http.Header.CONTENT_LENGTH));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private int failFast(CacheStore.Entry cacheEntry, long openMillis) {
+    if (canServeStale(cacheEntry)) {
+      return onCacheHit(cacheEntry);
+    }
+    final HttpException e = new HttpException(HttpException.CIRCUIT_OPEN, "Circuit is open for " + getHost());
+    onError(e.setRetryAfter(openMillis));
+    return -1;
+  }
+
+  private int onResponse(int statusCode, Map<String, String> headers, InputStream content,
+                         CacheStore.Entry cacheEntry) throws IOException {
+    if (statusCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+      Http.Engine.getCircuitBreaker().onFailure(getHost());
+    } else {
+      Http.Engine.getCircuitBreaker().onSuccess(getHost());
+    }
+    if (statusCode >= HttpURLConnection.HTTP_INTERNAL_ERROR && canServeStale(cacheEntry)) {
+      IOUtils.closeQuietly(content);
+      return onCacheHit(cacheEntry);
+    }
+    if (retryOnStatus(statusCode, headers)) {
+      IOUtils.closeQuietly(content);
+      return statusCode;
+    }
+    return onSuccess(statusCode, headers, content);
+  }
+
+  private boolean retryOnStatus(int statusCode, Map<String, String> headers) {
+    if (statusCode == HTTP_TOO_MANY_REQUESTS || statusCode == HttpURLConnection.HTTP_UNAVAILABLE) {
+      final HttpException e = new HttpException(HttpException.SERVER, mUrl + " " + HttpStatus.getLine(statusCode));
+      return scheduleRetry(e.setRetryAfter(parseRetryAfter(headers.get(Http.Header.RETRY_AFTER))));
+    }
+    return false;
+  }
+
+  private static long parseRetryAfter(String value) {
+    if (TextUtils.isEmpty(value)) {
+      return 0;
+    }
+    try {
+      return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+    } catch (NumberFormatException e) {
+      return Math.max(0, HttpDate.parse(value).getTime() - System.currentTimeMillis());
+    }
+  }
+
   private void setConnectionCookies(HttpURLConnection cn) {
-    final List<Cookie> cookies = Http.Engine.getCookieStore().get(Uri.parse(mUrl));
-    for (final Cookie cookie : cookies) {
-      cn.addRequestProperty(Http.Header.COOKIE, cookie.toString());
+    final String cookies = Http.Engine.getCookieStore().getCookieHeader(Uri.parse(mUrl));
+    if (!TextUtils.isEmpty(cookies)) {
+      cn.setRequestProperty(Http.Header.COOKIE, cookies);
     }
   }
 
@@ -261,6 +689,9 @@ public class AsyncHttpEntry implements Runnable, Comparable<AsyncHttpEntry> {
     if (lastModified > 0) {
       cn.setRequestProperty(Http.Header.IF_MODIFIED_SINCE, HttpDate.format(lastModified));
     }
+    if (Http.Engine.isCompressionEnabled()) {
+      cn.setRequestProperty(Http.Header.ACCEPT_ENCODING, ACCEPT_ENCODING);
+    }
     for (final Map.Entry<String, String> header : mHeaders.entrySet()) {
       cn.setRequestProperty(header.getKey(), header.getValue());
     }
@@ -272,7 +703,7 @@ public class AsyncHttpEntry implements Runnable, Comparable<AsyncHttpEntry> {
     }
   }
 
-  private int onSuccess(int statusCode, Map<String, String> headers, InputStream content) {
+  private int onSuccess(int statusCode, Map<String, String> headers, InputStream content) throws IOException {
     Http.Engine.getCookieStore().add(Uri.parse(mUrl), Cookie.parse(headers.get(CookieStore.Header.SET_COOKIE)));
     final CachePolicy cacheStorePolicy = Http.Engine.getCacheStore().getPolicy();
     if (cacheStorePolicy.shouldCache(mUrl, headers) && mCachePolicy.get().shouldCache(mUrl, headers)) {
@@ -281,28 +712,68 @@ public class AsyncHttpEntry implements Runnable, Comparable<AsyncHttpEntry> {
       } else if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
         onSuccessWithCacheUpdate(headers);
       } else {
-        onSuccessIfCallbackExists(statusCode, headers, content);
+        onSuccessIfCallbackExists(statusCode, headers, decodeContent(headers, content));
       }
     } else {
-      onSuccessIfCallbackExists(statusCode, headers, content);
+      onSuccessIfCallbackExists(statusCode, headers, decodeContent(headers, content));
     }
     return statusCode;
   }
 
-  private void onSuccessWithCacheSave(Map<String, String> headers, InputStream content) {
-    final CacheStore.Entry cacheEntry = Http.Engine.getCacheStore().put(mUrl, headers, content);
-    if (cacheEntry != null) {
+  private void onSuccessWithCacheSave(Map<String, String> headers, InputStream content) throws IOException {
+    final CacheStore.Editor editor = Http.Engine.getCacheStore().edit(mUrl, headers);
+    if (editor == null) {
+      onSuccessIfCallbackExists(HttpURLConnection.HTTP_OK, headers, decodeContent(headers, content));
+      return;
+    }
+    final OutputStream cache;
+    try {
+      cache = editor.newOutputStream();
+    } catch (IOException e) {
+      editor.abort();
+      onSuccessIfCallbackExists(HttpURLConnection.HTTP_OK, headers, decodeContent(headers, content));
+      return;
+    }
+    final TeeInputStream tee;
+    try {
+      tee = new TeeInputStream(editor.acceptsEncoded() ? content : decodeContent(headers, content), cache);
+    } catch (IOException e) {
+      IOUtils.closeQuietly(cache);
+      editor.abort();
+      throw e;
+    }
+    try {
+      onSuccessIfCallbackExists(HttpURLConnection.HTTP_OK, headers,
+          editor.acceptsEncoded() ? decodeContent(headers, tee) : tee);
+    } finally {
+      IOUtils.closeQuietly(tee);
+      commitOrAbort(editor, tee.isComplete());
+    }
+  }
+
+  private InputStream decodeContent(Map<String, String> headers, InputStream content) throws IOException {
+    return HttpUtils.decodeContent(content, headers.get(Http.Header.CONTENT_ENCODING));
+  }
+
+  private void commitOrAbort(CacheStore.Editor editor, boolean complete) {
+    if (complete) {
       try {
-        onSuccessIfCallbackExists(HttpURLConnection.HTTP_OK, headers, cacheEntry.getContent());
+        editor.commit();
       } catch (IOException e) {
-        onError(new HttpException(HttpException.CACHE, mUrl, e));
+        if (Http.Engine.isInDebugMode()) {
+          Logger.error(e);
+        }
       }
+    } else {
+      editor.abort();
     }
   }
 
   private void onSuccessWithCacheUpdate(Map<String, String> headers) {
     final CacheStore.Entry cacheEntry = Http.Engine.getCacheStore().update(mUrl, headers);
-    if (cacheEntry != null) {
+    if (cacheEntry == null) {
+      onError(new HttpException(HttpException.CACHE, mUrl));
+    } else {
       try {
         onSuccessIfCallbackExists(HttpURLConnection.HTTP_NOT_MODIFIED, headers, cacheEntry.getContent());
       } catch (IOException e) {
@@ -312,23 +783,154 @@ public class AsyncHttpEntry implements Runnable, Comparable<AsyncHttpEntry> {
   }
 
   private void onSuccessIfCallbackExists(int statusCode, Map<String, String> headers, InputStream content) {
+    final List<AsyncHttpEntry> followers = completeFlight();
+    if (followers.isEmpty()) {
+      deliverSuccess(statusCode, headers, content);
+    } else {
+      fanOutSuccess(statusCode, headers, content, followers);
+    }
+  }
+
+  private void fanOutSuccess(int statusCode, Map<String, String> headers, InputStream content,
+                             List<AsyncHttpEntry> followers) {
+    final byte[] body;
+    try {
+      body = IOUtils.toByteArray(content);
+    } catch (IOException e) {
+      for (final AsyncHttpEntry follower : followers) {
+        if (!follower.mCanceled.get()) {
+          follower.dispatch();
+        }
+      }
+      onError(newNetworkError(e));
+      return;
+    } finally {
+      IOUtils.closeQuietly(content);
+    }
+    deliverSuccess(statusCode, headers, new ByteArrayInputStream(body));
+    for (final AsyncHttpEntry follower : followers) {
+      if (!follower.mCanceled.get()) {
+        follower.deliverSuccess(statusCode, headers, new ByteArrayInputStream(body));
+      }
+    }
+  }
+
+  private void deliverSuccess(int statusCode, Map<String, String> headers, InputStream content) {
     try {
       if (mCallback.get() != null) {
         mCallback.get().onSuccess(statusCode, headers, content);
       }
     } finally {
       IOUtils.closeQuietly(content);
+      final HttpFuture future = mFuture.get();
+      if (future != null) {
+        future.set(statusCode);
+      }
+    }
+  }
+
+  private void deliverError(HttpException e) {
+    try {
+      if (mCallback.get() != null) {
+        mCallback.get().onError(e);
+      }
+    } finally {
+      final HttpFuture future = mFuture.get();
+      if (future != null) {
+        future.setException(e);
+      }
     }
   }
 
   private void onError(HttpException e) {
     if (Http.Engine.isInDebugMode()) {
-      Logger.error(e.getCause());
+      Logger.error(e);
+    }
+    if (mCanceled.get()) {
+      resendFollowers();
+    } else if (!scheduleRetry(e)) {
+      failFlight(e);
+    }
+  }
+
+  private void failFlight(HttpException e) {
+    deliverError(e);
+    for (final AsyncHttpEntry follower : completeFlight()) {
+      if (!follower.mCanceled.get()) {
+        follower.deliverError(e);
+      }
+    }
+  }
+
+  private boolean scheduleRetry(HttpException e) {
+    final RetryPolicy retryPolicy = mRetryPolicy.get();
+    final int retry = mRetry.get();
+    if (!retryPolicy.shouldRetry(retry, e.setReplayable(isReplayable()))) {
+      return false;
     }
-    if (mRetryPolicy.get().shouldRetry(mRetry.getAndIncrement(), e)) {
+    final long delay = Math.max(getRetryDelay(retryPolicy, retry, e), e.getRetryAfter());
+    if (delay >= getRemainingTime()) {
+      return false;
+    }
+    mRetry.incrementAndGet();
+    if (mInline.get()) {
+      mRetryDelay.set(delay);
+      mRetryPending.set(true);
+    } else if (delay > 0) {
+      BackgroundThread.getHandler().postDelayed(mRetryCmd, delay);
+    } else {
       Http.Engine.enqueue(this);
-    } else if (mCallback.get() != null) {
-      mCallback.get().onError(e);
+    }
+    return true;
+  }
+
+  /**
+   * POST is not idempotent and a one-shot body cannot be written again.
+   */
+  private boolean isReplayable() {
+    if (TextUtils.equals(POST, mMethod)) {
+      return false;
+    }
+    final HttpBody body = mHttpBody.get();
+    return !(body instanceof StreamingBody) || ((StreamingBody) body).isReplayable();
+  }
+
+  private static long getRetryDelay(RetryPolicy retryPolicy, int retry, HttpException e) {
+    if (retryPolicy instanceof BackoffRetryPolicy) {
+      return ((BackoffRetryPolicy) retryPolicy).getRetryDelay(retry, e);
+    }
+    return 0;
+  }
+
+  private boolean awaitInlineRetry() {
+    if (!mRetryPending.getAndSet(false)) {
+      return false;
+    }
+    try {
+      waitForRetry(mRetryDelay.getAndSet(0));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failFlight(new HttpException(HttpException.IO, mUrl + " interrupted while waiting to retry", e));
+      return false;
+    }
+    if (mCanceled.get()) {
+      resendFollowers();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Waits on {@link #mCanceled}, so {@link #cancel()} ends the backoff early.
+   */
+  private void waitForRetry(long delay) throws InterruptedException {
+    final long retryAt = SystemClock.elapsedRealtime() + delay;
+    synchronized (mCanceled) {
+      long remaining = delay;
+      while (remaining > 0 && !mCanceled.get()) {
+        mCanceled.wait(remaining);
+        remaining = retryAt - SystemClock.elapsedRealtime();
+      }
     }
   }
 
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http;
+
+/**
+ * Retry policy that waits between attempts. Plain {@link RetryPolicy} implementations retry right away.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public interface BackoffRetryPolicy extends RetryPolicy {
+
+  /**
+   * @return milliseconds to wait before the retry, a Retry-After sent by the server takes
+   * precedence when it is longer
+   */
+  long getRetryDelay(int retry, HttpException e);
+
+}
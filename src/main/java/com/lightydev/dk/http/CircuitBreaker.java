@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fails requests to a host fast after it failed several times in a row. Once the open period is
+ * over a single trial request is let through, its result closes the circuit or opens it again.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public class CircuitBreaker {
+
+  public static final CircuitBreaker DISABLED = new CircuitBreaker(Integer.MAX_VALUE, 0);
+
+  private final Map<String, State> mStates = new HashMap<>();
+
+  private final int mFailureThreshold;
+
+  private final long mOpenMillis;
+
+  public CircuitBreaker(int failureThreshold, long openMillis) {
+    mFailureThreshold = failureThreshold;
+    mOpenMillis = openMillis;
+  }
+
+  /**
+   * @param caller the request that asks, it owns the trial if it is let through as one
+   * @return 0 if a request to the host may go to the network, otherwise milliseconds left
+   * until the circuit lets a trial request through
+   */
+  public synchronized long getOpenMillis(String host, Object caller) {
+    final State state = mStates.get(host);
+    if (state == null || state.mFailures < mFailureThreshold) {
+      return 0;
+    }
+    final long now = SystemClock.elapsedRealtime();
+    if (now < state.mOpenUntil) {
+      return state.mOpenUntil - now;
+    }
+    if (state.mTrialOwner != null && state.mTrialOwner != caller && now < state.mTrialUntil) {
+      return state.mTrialUntil - now;
+    }
+    state.mTrialOwner = caller;
+    state.mTrialUntil = now + mOpenMillis;
+    return 0;
+  }
+
+  public synchronized void onSuccess(String host) {
+    mStates.remove(host);
+  }
+
+  public synchronized void onFailure(String host) {
+    if (mFailureThreshold == Integer.MAX_VALUE) {
+      return;
+    }
+    State state = mStates.get(host);
+    if (state == null) {
+      state = new State();
+      mStates.put(host, state);
+    }
+    ++state.mFailures;
+    if (state.mFailures >= mFailureThreshold) {
+      state.mOpenUntil = SystemClock.elapsedRealtime() + mOpenMillis;
+    }
+  }
+
+  /**
+   * Ends the trial if the caller owns it, whatever its outcome was. A canceled or otherwise unreported
+   * trial must not keep the circuit closed to everyone else, requests that went out before the
+   * circuit opened don't end it. A trial that never finishes is taken over after the open period.
+   */
+  public synchronized void onFinished(String host, Object caller) {
+    final State state = mStates.get(host);
+    if (state != null && state.mTrialOwner == caller) {
+      state.mTrialOwner = null;
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    int open = 0;
+    for (final State state : mStates.values()) {
+      if (state.mFailures >= mFailureThreshold) {
+        ++open;
+      }
+    }
+    return "CircuitBreaker{" +
+        "open=" + open +
+        ", failing=" + mStates.size() +
+        '}';
+  }
+
+  private static final class State {
+
+    private int mFailures;
+
+    private long mOpenUntil;
+
+    private Object mTrialOwner;
+
+    private long mTrialUntil;
+
+  }
+
+}
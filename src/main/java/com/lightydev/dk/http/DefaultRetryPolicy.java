@@ -17,23 +17,53 @@
 package com.lightydev.dk.http;
 
 /**
+ * Retries replayable requests with an exponential backoff and jitter. Client errors and requests
+ * rejected by an open circuit are not retried.
+ *
  * @author =Troy= <Daniel Serdyukov>
  */
-public class DefaultRetryPolicy implements RetryPolicy {
+public class DefaultRetryPolicy implements BackoffRetryPolicy {
+
+  public static final long DEFAULT_BASE_DELAY = 500;
+
+  public static final long DEFAULT_MAX_DELAY = 30000;
 
   private final int mMaxRetries;
 
+  private final long mBaseDelay;
+
+  private final long mMaxDelay;
+
   public DefaultRetryPolicy() {
     this(3);
   }
 
   public DefaultRetryPolicy(int maxRetries) {
+    this(maxRetries, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+  }
+
+  /**
+   * @since 2.4.0
+   */
+  public DefaultRetryPolicy(int maxRetries, long baseDelay, long maxDelay) {
     mMaxRetries = maxRetries;
+    mBaseDelay = baseDelay;
+    mMaxDelay = maxDelay;
   }
 
   @Override
   public boolean shouldRetry(int retry, HttpException e) {
-    return retry < mMaxRetries && !e.isNetworkError();
+    return retry < mMaxRetries && e.isReplayable()
+        && e.getType() != HttpException.CLIENT && e.getType() != HttpException.CIRCUIT_OPEN;
+  }
+
+  /**
+   * @return random delay between the half and the whole of min(base * 2^retry, max)
+   */
+  @Override
+  public long getRetryDelay(int retry, HttpException e) {
+    final long delay = Math.min(mMaxDelay, mBaseDelay << Math.min(retry, 30));
+    return delay / 2 + (long) (Math.random() * (delay / 2));
   }
 
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Admits requests to the executor under a global and a per-host in-flight limit. Every host has
+ * its own ready queue ordered by {@link AsyncHttpEntry#setPriority(int)}, hosts are served
+ * round-robin so a slow host can't take every worker.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ */
+final class Dispatcher {
+
+  static final int DEFAULT_MAX_REQUESTS = 16;
+
+  static final int DEFAULT_MAX_REQUESTS_PER_HOST = 4;
+
+  private final Executor mExecutor;
+
+  private final Map<String, Queue<AsyncHttpEntry>> mReady = new HashMap<>();
+
+  private final Queue<String> mReadyHosts = new ArrayDeque<>();
+
+  private final Map<String, Integer> mRunning = new HashMap<>();
+
+  private int mMaxRequests = DEFAULT_MAX_REQUESTS;
+
+  private int mMaxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+
+  private int mRunningCount;
+
+  private int mQueuedCount;
+
+  Dispatcher(Executor executor) {
+    mExecutor = executor;
+  }
+
+  void enqueue(AsyncHttpEntry entry) {
+    final String host = entry.getHost();
+    synchronized (this) {
+      Queue<AsyncHttpEntry> ready = mReady.get(host);
+      if (ready == null) {
+        ready = new PriorityQueue<>();
+        mReady.put(host, ready);
+        mReadyHosts.offer(host);
+      }
+      ready.offer(entry);
+      ++mQueuedCount;
+    }
+    executeAll(promote());
+  }
+
+  /**
+   * Restores the order of a queued entry after its priority has changed.
+   */
+  synchronized void reprioritize(AsyncHttpEntry entry) {
+    final Queue<AsyncHttpEntry> ready = mReady.get(entry.getHost());
+    if (ready != null && ready.remove(entry)) {
+      ready.offer(entry);
+    }
+  }
+
+  void setMaxRequests(int maxRequests) {
+    synchronized (this) {
+      mMaxRequests = Math.max(1, maxRequests);
+    }
+    executeAll(promote());
+  }
+
+  void setMaxRequestsPerHost(int maxRequestsPerHost) {
+    synchronized (this) {
+      mMaxRequestsPerHost = Math.max(1, maxRequestsPerHost);
+    }
+    executeAll(promote());
+  }
+
+  synchronized int getQueuedCount() {
+    return mQueuedCount;
+  }
+
+  synchronized int getQueuedCount(String host) {
+    final Queue<AsyncHttpEntry> ready = mReady.get(host);
+    if (ready == null) {
+      return 0;
+    }
+    return ready.size();
+  }
+
+  synchronized int getRunningCount() {
+    return mRunningCount;
+  }
+
+  synchronized int getRunningCount(String host) {
+    final Integer running = mRunning.get(host);
+    if (running == null) {
+      return 0;
+    }
+    return running;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "Dispatcher{" +
+        "running=" + mRunningCount + "/" + mMaxRequests +
+        ", queued=" + mQueuedCount +
+        ", hosts=" + mReady.size() +
+        ", per-host=" + mMaxRequestsPerHost +
+        '}';
+  }
+
+  private void finished(String host) {
+    release(host);
+    executeAll(promote());
+  }
+
+  private synchronized void release(String host) {
+    --mRunningCount;
+    final int running = mRunning.get(host) - 1;
+    if (running == 0) {
+      mRunning.remove(host);
+    } else {
+      mRunning.put(host, running);
+    }
+  }
+
+  private synchronized List<Call> promote() {
+    final List<Call> calls = new ArrayList<>();
+    boolean promoted = true;
+    while (promoted && mRunningCount < mMaxRequests) {
+      promoted = false;
+      for (int i = mReadyHosts.size(); i > 0 && mRunningCount < mMaxRequests; --i) {
+        final Call call = promoteNext(mReadyHosts.poll());
+        if (call != null) {
+          calls.add(call);
+          promoted = true;
+        }
+      }
+    }
+    return calls;
+  }
+
+  private Call promoteNext(String host) {
+    final Queue<AsyncHttpEntry> ready = mReady.get(host);
+    final int running = getRunningCount(host);
+    if (running >= mMaxRequestsPerHost) {
+      mReadyHosts.offer(host);
+      return null;
+    }
+    final AsyncHttpEntry entry = ready.poll();
+    if (ready.isEmpty()) {
+      mReady.remove(host);
+    } else {
+      mReadyHosts.offer(host);
+    }
+    mRunning.put(host, running + 1);
+    ++mRunningCount;
+    --mQueuedCount;
+    return new Call(host, entry);
+  }
+
+  /**
+   * A rejected call gives its slot back without promoting more work to the same executor.
+   */
+  private void executeAll(List<Call> calls) {
+    for (final Call call : calls) {
+      try {
+        mExecutor.execute(call);
+      } catch (RejectedExecutionException e) {
+        release(call.mHost);
+        call.mEntry.onRejected(e);
+      }
+    }
+  }
+
+  private final class Call implements Runnable {
+
+    private final String mHost;
+
+    private final AsyncHttpEntry mEntry;
+
+    Call(String host, AsyncHttpEntry entry) {
+      mHost = host;
+      mEntry = entry;
+    }
+
+    @Override
+    public void run() {
+      try {
+        mEntry.run();
+      } finally {
+        finished(mHost);
+      }
+    }
+
+  }
+
+}
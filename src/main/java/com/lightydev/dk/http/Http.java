@@ -19,12 +19,19 @@ package com.lightydev.dk.http;
 import com.lightydev.dk.DroidKit;
 import com.lightydev.dk.http.cache.CacheStore;
 import com.lightydev.dk.http.cookie.CookieStore;
+import com.lightydev.dk.http.pool.ConnectionPool;
 import com.lightydev.dk.log.Logger;
+import com.lightydev.dk.os.BackgroundThread;
 
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -36,12 +43,22 @@ public final class Http {
 
   private static final AtomicInteger GUARD = new AtomicInteger();
 
-  private static final Queue<Runnable> REQUEST_CACHE = new ConcurrentLinkedQueue<>();
+  private static final Queue<AsyncHttpEntry> REQUEST_CACHE = new ConcurrentLinkedQueue<>();
 
   private static final AtomicReference<CacheStore> CACHE_STORE = new AtomicReference<>(CacheStore.NO_CACHE);
 
   private static final AtomicReference<CookieStore> COOKIE_STORE = new AtomicReference<>(CookieStore.MEMORY);
 
+  private static final AtomicReference<ConnectionPool> CONNECTION_POOL =
+      new AtomicReference<>(ConnectionPool.KEEP_ALIVE);
+
+  private static final AtomicReference<CircuitBreaker> CIRCUIT_BREAKER =
+      new AtomicReference<>(CircuitBreaker.DISABLED);
+
+  private static final RequestCoalescer COALESCER = new RequestCoalescer();
+
+  private static final Dispatcher DISPATCHER = new Dispatcher(DroidKit.IO_EXECUTOR);
+
   private static final String URL = "url";
 
   private Http() {
@@ -83,6 +100,8 @@ public final class Http {
 
     String ACCEPT_CHARSET = "Accept-Charset";
 
+    String CONNECTION = "Connection";
+
     String CONTENT_ENCODING = "Content-Encoding";
 
     String CONTENT_LENGTH = "Content-Length";
@@ -95,18 +114,34 @@ public final class Http {
 
     String IF_NON_MATCH = "If-None-Match";
 
+    String RETRY_AFTER = "Retry-After";
+
   }
 
   public static final class Engine {
 
     private static final AtomicBoolean DEBUG_MODE = new AtomicBoolean();
 
+    private static final AtomicBoolean REQUEST_COALESCING = new AtomicBoolean(true);
+
+    private static final AtomicBoolean COMPRESSION = new AtomicBoolean(true);
+
+    private static final AtomicInteger CONNECT_TIMEOUT = new AtomicInteger(15000);
+
+    private static final AtomicInteger READ_TIMEOUT = new AtomicInteger(30000);
+
+    private static final AtomicLong DEADLINE = new AtomicLong();
+
+    private static final AtomicReference<TokenBucket> RATE_LIMIT = new AtomicReference<>(TokenBucket.UNLIMITED);
+
+    private static final Map<Integer, TokenBucket> PRIORITY_RATE_LIMITS = new ConcurrentHashMap<>();
+
     private Engine() {
     }
 
     public static void start() {
       if (GUARD.getAndIncrement() == 0 && !REQUEST_CACHE.isEmpty()) {
-        DroidKit.EXECUTOR.execute(new Runnable() {
+        DroidKit.IO_EXECUTOR.execute(new Runnable() {
           @Override
           public void run() {
             while (!REQUEST_CACHE.isEmpty()) {
@@ -118,8 +153,11 @@ public final class Http {
     }
 
     public static void stop() {
-      if (GUARD.decrementAndGet() == 0 && isInDebugMode()) {
-        Logger.debug("%s", DroidKit.EXECUTOR);
+      if (GUARD.decrementAndGet() == 0) {
+        flushCookieStore();
+        if (isInDebugMode()) {
+          Logger.debug("%s %s %s", DroidKit.IO_EXECUTOR, DISPATCHER, CONNECTION_POOL.get());
+        }
       }
     }
 
@@ -139,6 +177,142 @@ public final class Http {
       COOKIE_STORE.get().removeAll();
     }
 
+    private static void flushCookieStore() {
+      final CookieStore cookieStore = COOKIE_STORE.get();
+      if (cookieStore instanceof Flushable) {
+        BackgroundThread.getHandler().postAtFrontOfQueue(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              ((Flushable) cookieStore).flush();
+            } catch (IOException e) {
+              Logger.quiet("%s", e);
+            }
+          }
+        });
+      }
+    }
+
+    public static void setConnectionPool(ConnectionPool connectionPool) {
+      CONNECTION_POOL.set(connectionPool);
+    }
+
+    /**
+     * @param timeout default connect timeout in milliseconds, 0 waits forever
+     * @since 2.4.0
+     */
+    public static void setConnectTimeout(int timeout) {
+      CONNECT_TIMEOUT.set(timeout);
+    }
+
+    /**
+     * @param timeout default read timeout in milliseconds, 0 waits forever
+     * @since 2.4.0
+     */
+    public static void setReadTimeout(int timeout) {
+      READ_TIMEOUT.set(timeout);
+    }
+
+    /**
+     * @param deadline default time in milliseconds a request may spend in the queue, retries and
+     *                 transfer together, 0 means no deadline
+     * @since 2.4.0
+     */
+    public static void setDeadline(long deadline) {
+      DEADLINE.set(deadline);
+    }
+
+    /**
+     * @param bytesPerSecond download rate shared by all requests, 0 removes the limit
+     * @since 2.4.0
+     */
+    public static void setRateLimit(long bytesPerSecond) {
+      RATE_LIMIT.set(new TokenBucket(bytesPerSecond));
+    }
+
+    /**
+     * @param bytesPerSecond download rate shared by the requests of the given priority,
+     *                       0 removes the limit
+     * @since 2.4.0
+     */
+    public static void setRateLimit(int priority, long bytesPerSecond) {
+      if (bytesPerSecond > 0) {
+        PRIORITY_RATE_LIMITS.put(priority, new TokenBucket(bytesPerSecond));
+      } else {
+        PRIORITY_RATE_LIMITS.remove(priority);
+      }
+    }
+
+    /**
+     * @since 2.4.0
+     */
+    public static void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+      CIRCUIT_BREAKER.set(circuitBreaker);
+    }
+
+    /**
+     * Identical GET requests sent while one is in flight wait for its response instead of going to
+     * the network. Such followers keep their own deadline, but their progress callback and rate limit
+     * don't apply, the response body is read once by the first request.
+     */
+    public static void setRequestCoalescing(boolean coalescing) {
+      REQUEST_COALESCING.set(coalescing);
+    }
+
+    /**
+     * Asks servers for gzip or deflate responses and decodes them while the callback reads
+     * the content.
+     *
+     * @since 2.4.0
+     */
+    public static void setCompression(boolean compression) {
+      COMPRESSION.set(compression);
+    }
+
+    /**
+     * @param maxRequests max number of requests executed at once
+     * @since 2.4.0
+     */
+    public static void setMaxRequests(int maxRequests) {
+      DISPATCHER.setMaxRequests(maxRequests);
+    }
+
+    /**
+     * @param maxRequestsPerHost max number of requests to a single host executed at once
+     * @since 2.4.0
+     */
+    public static void setMaxRequestsPerHost(int maxRequestsPerHost) {
+      DISPATCHER.setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    /**
+     * @since 2.4.0
+     */
+    public static int getQueuedRequestCount() {
+      return DISPATCHER.getQueuedCount();
+    }
+
+    /**
+     * @since 2.4.0
+     */
+    public static int getQueuedRequestCount(String host) {
+      return DISPATCHER.getQueuedCount(host);
+    }
+
+    /**
+     * @since 2.4.0
+     */
+    public static int getRunningRequestCount() {
+      return DISPATCHER.getRunningCount();
+    }
+
+    /**
+     * @since 2.4.0
+     */
+    public static int getRunningRequestCount(String host) {
+      return DISPATCHER.getRunningCount(host);
+    }
+
     public static void setDebugMode(boolean debugMode) {
       DEBUG_MODE.set(debugMode);
     }
@@ -147,14 +321,18 @@ public final class Http {
       return DEBUG_MODE.get();
     }
 
-    static void enqueue(Runnable entry) {
+    static void enqueue(AsyncHttpEntry entry) {
       if (GUARD.get() > 0) {
-        DroidKit.EXECUTOR.execute(entry);
+        DISPATCHER.enqueue(entry);
       } else {
         REQUEST_CACHE.offer(entry);
       }
     }
 
+    static void reprioritize(AsyncHttpEntry entry) {
+      DISPATCHER.reprioritize(entry);
+    }
+
     static CacheStore getCacheStore() {
       return CACHE_STORE.get();
     }
@@ -163,6 +341,46 @@ public final class Http {
       return COOKIE_STORE.get();
     }
 
+    static ConnectionPool getConnectionPool() {
+      return CONNECTION_POOL.get();
+    }
+
+    static int getConnectTimeout() {
+      return CONNECT_TIMEOUT.get();
+    }
+
+    static int getReadTimeout() {
+      return READ_TIMEOUT.get();
+    }
+
+    static long getDeadline() {
+      return DEADLINE.get();
+    }
+
+    static TokenBucket getRateLimit() {
+      return RATE_LIMIT.get();
+    }
+
+    static TokenBucket getRateLimit(int priority) {
+      return PRIORITY_RATE_LIMITS.get(priority);
+    }
+
+    static CircuitBreaker getCircuitBreaker() {
+      return CIRCUIT_BREAKER.get();
+    }
+
+    static boolean isRequestCoalescingEnabled() {
+      return REQUEST_COALESCING.get();
+    }
+
+    static boolean isCompressionEnabled() {
+      return COMPRESSION.get();
+    }
+
+    static RequestCoalescer getCoalescer() {
+      return COALESCER;
+    }
+
   }
 
 }
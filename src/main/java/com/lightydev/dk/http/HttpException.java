@@ -42,6 +42,18 @@ public class HttpException extends IOException {
 
   public static final int IO = 5;
 
+  /**
+   * @since 2.4.0
+   */
+  public static final int TIMEOUT = 6;
+
+  /**
+   * Request was not sent because the circuit to the host is open.
+   *
+   * @since 2.4.0
+   */
+  public static final int CIRCUIT_OPEN = 7;
+
   private static final List<Class<? extends Throwable>> NETWORK_ERRORS = new CopyOnWriteArrayList<>();
 
   static {
@@ -55,6 +67,10 @@ public class HttpException extends IOException {
 
   private final int mType;
 
+  private long mRetryAfter;
+
+  private boolean mReplayable = true;
+
   public HttpException(int type) {
     super();
     mType = type;
@@ -80,7 +96,40 @@ public class HttpException extends IOException {
   }
 
   public boolean isNetworkError() {
-    return NETWORK_ERRORS.contains(getCause().getClass());
+    return getCause() != null && NETWORK_ERRORS.contains(getCause().getClass());
+  }
+
+  /**
+   * @since 2.4.0
+   */
+  public boolean isTimeout() {
+    return mType == TIMEOUT;
+  }
+
+  /**
+   * @return milliseconds the server asked to wait before a retry or 0
+   * @since 2.4.0
+   */
+  public long getRetryAfter() {
+    return mRetryAfter;
+  }
+
+  /**
+   * @return false if the request is not idempotent or its body can be sent only once
+   * @since 2.4.0
+   */
+  public boolean isReplayable() {
+    return mReplayable;
+  }
+
+  HttpException setReplayable(boolean replayable) {
+    mReplayable = replayable;
+    return this;
+  }
+
+  HttpException setRetryAfter(long retryAfter) {
+    mRetryAfter = retryAfter;
+    return this;
   }
 
 }
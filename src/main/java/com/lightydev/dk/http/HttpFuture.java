@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author =Troy= <Daniel Serdyukov>
+ */
+final class HttpFuture implements Future<Integer> {
+
+  private final CountDownLatch mDone = new CountDownLatch(1);
+
+  private final AtomicBoolean mCanceled = new AtomicBoolean();
+
+  private final AsyncHttpEntry mEntry;
+
+  private volatile int mStatusCode;
+
+  private volatile HttpException mError;
+
+  HttpFuture(AsyncHttpEntry entry) {
+    mEntry = entry;
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    if (isDone()) {
+      return false;
+    }
+    mEntry.cancel();
+    return mCanceled.get();
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return mCanceled.get();
+  }
+
+  @Override
+  public boolean isDone() {
+    return mDone.getCount() == 0;
+  }
+
+  @Override
+  public Integer get() throws InterruptedException, ExecutionException {
+    mDone.await();
+    return report();
+  }
+
+  @Override
+  public Integer get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+      TimeoutException {
+    if (!mDone.await(timeout, unit)) {
+      throw new TimeoutException(mEntry.toString());
+    }
+    return report();
+  }
+
+  void set(int statusCode) {
+    if (!isDone()) {
+      mStatusCode = statusCode;
+      mDone.countDown();
+    }
+  }
+
+  void setException(HttpException e) {
+    if (!isDone()) {
+      mError = e;
+      mDone.countDown();
+    }
+  }
+
+  void setCanceled() {
+    if (!isDone() && mCanceled.compareAndSet(false, true)) {
+      mDone.countDown();
+    }
+  }
+
+  private Integer report() throws ExecutionException {
+    if (mCanceled.get()) {
+      throw new CancellationException(mEntry.toString());
+    }
+    if (mError != null) {
+      throw new ExecutionException(mError);
+    }
+    return mStatusCode;
+  }
+
+}
@@ -25,6 +25,7 @@ import com.lightydev.dk.digest.Hex;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URI;
@@ -33,9 +34,11 @@ import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * @author =Troy= <Daniel Serdyukov>
@@ -48,6 +51,10 @@ public final class HttpUtils {
 
   public static final String KEY_VALUE_SEPARATOR = "=";
 
+  public static final String GZIP = "gzip";
+
+  public static final String DEFLATE = "deflate";
+
   private HttpUtils() {
   }
 
@@ -103,7 +110,7 @@ public final class HttpUtils {
   static Map<String, String> readHeaders(HttpURLConnection cn) {
     final Map<String, List<String>> cnHeaders = cn.getHeaderFields();
     if (cnHeaders != null) {
-      final Map<String, String> headers = new HashMap<>(cnHeaders.size());
+      final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
       for (final Map.Entry<String, List<String>> cnHeader : cnHeaders.entrySet()) {
         if (cnHeader.getKey() != null) {
           headers.put(cnHeader.getKey(), TextUtils.join(",", cnHeader.getValue()));
@@ -114,6 +121,30 @@ public final class HttpUtils {
     return Collections.emptyMap();
   }
 
+  /**
+   * Wraps the content with a streaming decoder of the given Content-Encoding. Empty bodies and
+   * unknown encodings are returned as is.
+   *
+   * @since 2.4.0
+   */
+  public static InputStream decodeContent(InputStream content, String encoding) throws IOException {
+    if (TextUtils.isEmpty(encoding)) {
+      return content;
+    }
+    final PushbackInputStream in = new PushbackInputStream(content);
+    final int b = in.read();
+    if (b == -1) {
+      return in;
+    }
+    in.unread(b);
+    if (GZIP.equalsIgnoreCase(encoding.trim())) {
+      return new GZIPInputStream(in);
+    } else if (DEFLATE.equalsIgnoreCase(encoding.trim())) {
+      return new InflaterInputStream(in);
+    }
+    return in;
+  }
+
   static InputStream readContent(HttpURLConnection cn) {
     try {
       return cn.getInputStream();
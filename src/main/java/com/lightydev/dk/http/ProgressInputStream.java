@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.lightydev.dk.http.callback.ProgressCallback;
+import com.lightydev.dk.io.IOUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts and throttles the bytes of a response body. Progress is delivered on the main thread,
+ * events that arrive while one is still pending are folded into it.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ */
+final class ProgressInputStream extends FilterInputStream {
+
+  private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+  private final List<TokenBucket> mBuckets;
+
+  private final ProgressCallback mCallback;
+
+  private final long mTotal;
+
+  private final AtomicLong mCurrent = new AtomicLong();
+
+  private final AtomicBoolean mPending = new AtomicBoolean();
+
+  private final Runnable mNotifyCmd = new Runnable() {
+    @Override
+    public void run() {
+      mPending.set(false);
+      mCallback.onProgress(mCurrent.get(), mTotal);
+    }
+  };
+
+  ProgressInputStream(InputStream in, long total, List<TokenBucket> buckets, ProgressCallback callback) {
+    super(in);
+    mTotal = total;
+    mBuckets = buckets;
+    mCallback = callback;
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int b = super.read();
+    onRead(b == IOUtils.EOF ? IOUtils.EOF : 1);
+    return b;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int count) throws IOException {
+    final int bytes = super.read(buffer, offset, count);
+    onRead(bytes);
+    return bytes;
+  }
+
+  @Override
+  public long skip(long count) throws IOException {
+    final long bytes = super.skip(count);
+    onRead((int) bytes);
+    return bytes;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  private void onRead(int bytes) throws InterruptedIOException {
+    if (bytes > 0) {
+      mCurrent.addAndGet(bytes);
+      for (final TokenBucket bucket : mBuckets) {
+        bucket.acquire(bytes);
+      }
+    }
+    if (mCallback != null && mPending.compareAndSet(false, true)) {
+      MAIN_HANDLER.post(mNotifyCmd);
+    }
+  }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-flight registry of in-flight requests. The first entry sent for a key becomes the leader,
+ * entries sent for the same key while the leader is in flight are attached to it as followers
+ * and receive its result instead of going to the network.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ */
+final class RequestCoalescer {
+
+  private final Map<String, List<AsyncHttpEntry>> mInFlight = new HashMap<>();
+
+  synchronized boolean join(String key, AsyncHttpEntry entry) {
+    final List<AsyncHttpEntry> followers = mInFlight.get(key);
+    if (followers == null) {
+      mInFlight.put(key, new ArrayList<AsyncHttpEntry>());
+      return true;
+    }
+    followers.add(entry);
+    return false;
+  }
+
+  /**
+   * @return false if the follower is not waiting for the key anymore, the leader already took it
+   */
+  synchronized boolean leave(String key, AsyncHttpEntry entry) {
+    final List<AsyncHttpEntry> followers = mInFlight.get(key);
+    return followers != null && followers.remove(entry);
+  }
+
+  synchronized List<AsyncHttpEntry> complete(String key) {
+    final List<AsyncHttpEntry> followers = mInFlight.remove(key);
+    if (followers == null) {
+      return Collections.emptyList();
+    }
+    return followers;
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Bandwidth limiter shared by the streams that read through it. Readers take the bytes they have
+ * read and sleep off the debt once the bucket runs dry, so several readers share the rate fairly.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public class TokenBucket {
+
+  public static final TokenBucket UNLIMITED = new TokenBucket(0);
+
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  private final long mRate;
+
+  private double mTokens;
+
+  private long mLastRefill;
+
+  /**
+   * @param rate bytes per second, 0 or less disables the limit
+   */
+  public TokenBucket(long rate) {
+    mRate = rate;
+    mTokens = rate;
+    mLastRefill = System.nanoTime();
+  }
+
+  public long getRate() {
+    return mRate;
+  }
+
+  /**
+   * Blocks the reader until the bucket pays off the bytes it took.
+   *
+   * @throws InterruptedIOException if the reader was interrupted, the interrupt flag stays set
+   */
+  public void acquire(int bytes) throws InterruptedIOException {
+    if (mRate <= 0) {
+      return;
+    }
+    final long waitMillis;
+    synchronized (this) {
+      final long now = System.nanoTime();
+      mTokens = Math.min(mRate, mTokens + (now - mLastRefill) * mRate / NANOS_PER_SECOND);
+      mLastRefill = now;
+      mTokens -= bytes;
+      waitMillis = mTokens < 0 ? (long) (-mTokens * 1000 / mRate) : 0;
+    }
+    if (waitMillis > 0) {
+      try {
+        Thread.sleep(waitMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while throttled");
+      }
+    }
+  }
+
+}
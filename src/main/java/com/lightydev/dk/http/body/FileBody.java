@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.body;
+
+import com.lightydev.dk.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public class FileBody extends StreamingBody {
+
+  private final File mFile;
+
+  private final String mContentType;
+
+  public FileBody(File file) {
+    this(file, OCTET_STREAM);
+  }
+
+  public FileBody(File file, String contentType) {
+    mFile = file;
+    mContentType = contentType;
+  }
+
+  public File getFile() {
+    return mFile;
+  }
+
+  @Override
+  public long getContentLength() {
+    return mFile.length();
+  }
+
+  @Override
+  public String getContentType() {
+    return mContentType;
+  }
+
+  @Override
+  protected void writeContent(OutputStream out) throws IOException {
+    final InputStream in = new FileInputStream(mFile);
+    try {
+      IOUtils.copy(in, out);
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+}
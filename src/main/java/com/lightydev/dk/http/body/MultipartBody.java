@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.body;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * multipart/form-data body that streams its parts one after another. The length is sent up front
+ * when every part has a known length, otherwise the body goes chunked.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public class MultipartBody extends StreamingBody {
+
+  public static final String MULTIPART_FORM_DATA = "multipart/form-data";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final String CRLF = "\r\n";
+
+  private static final String DASHES = "--";
+
+  private final List<Part> mParts = new ArrayList<>();
+
+  private final String mBoundary = UUID.randomUUID().toString();
+
+  public MultipartBody addField(String name, String value) {
+    mParts.add(new Part(name, null, new FieldBody(value.getBytes(UTF_8))));
+    return this;
+  }
+
+  public MultipartBody addFile(String name, File file) {
+    return addFile(name, file, OCTET_STREAM);
+  }
+
+  public MultipartBody addFile(String name, File file, String contentType) {
+    mParts.add(new Part(name, file.getName(), new FileBody(file, contentType)));
+    return this;
+  }
+
+  public MultipartBody addStream(String name, String fileName, InputStream content, String contentType) {
+    mParts.add(new Part(name, fileName, new StreamBody(content, -1, contentType)));
+    return this;
+  }
+
+  public MultipartBody addPart(String name, String fileName, StreamingBody body) {
+    mParts.add(new Part(name, fileName, body));
+    return this;
+  }
+
+  @Override
+  public long getContentLength() {
+    long length = getClosingBoundary().length;
+    for (final Part part : mParts) {
+      final long bodyLength = part.mBody.getContentLength();
+      if (bodyLength < 0) {
+        return -1;
+      }
+      length += part.mHeader.length + bodyLength + CRLF.length();
+    }
+    return length;
+  }
+
+  /**
+   * @return false if any part can be written only once, e.g. one added with {@link #addStream}
+   */
+  @Override
+  public boolean isReplayable() {
+    for (final Part part : mParts) {
+      if (!part.mBody.isReplayable()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String getContentType() {
+    return MULTIPART_FORM_DATA + "; boundary=" + mBoundary;
+  }
+
+  @Override
+  protected void writeContent(OutputStream out) throws IOException {
+    final byte[] crlf = CRLF.getBytes(UTF_8);
+    for (final Part part : mParts) {
+      out.write(part.mHeader);
+      part.mBody.writeContent(out);
+      out.write(crlf);
+    }
+    out.write(getClosingBoundary());
+  }
+
+  private static String quote(String value) {
+    return "\"" + value.replace("\"", "%22").replace(CRLF, " ") + "\"";
+  }
+
+  private byte[] getClosingBoundary() {
+    return (DASHES + mBoundary + DASHES + CRLF).getBytes(UTF_8);
+  }
+
+  private final class Part {
+
+    private final byte[] mHeader;
+
+    private final StreamingBody mBody;
+
+    Part(String name, String fileName, StreamingBody body) {
+      final StringBuilder header = new StringBuilder()
+          .append(DASHES).append(mBoundary).append(CRLF)
+          .append("Content-Disposition: form-data; name=").append(quote(name));
+      if (fileName != null) {
+        header.append("; filename=").append(quote(fileName));
+        header.append(CRLF).append("Content-Type: ").append(body.getContentType());
+      }
+      mHeader = header.append(CRLF).append(CRLF).toString().getBytes(UTF_8);
+      mBody = body;
+    }
+
+  }
+
+  private static final class FieldBody extends StreamingBody {
+
+    private final byte[] mValue;
+
+    FieldBody(byte[] value) {
+      mValue = value;
+    }
+
+    @Override
+    public long getContentLength() {
+      return mValue.length;
+    }
+
+    @Override
+    public String getContentType() {
+      return "text/plain; charset=UTF-8";
+    }
+
+    @Override
+    protected void writeContent(OutputStream out) throws IOException {
+      out.write(mValue);
+    }
+
+  }
+
+}
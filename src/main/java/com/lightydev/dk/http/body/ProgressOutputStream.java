@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.body;
+
+import com.lightydev.dk.http.callback.ProgressCallback;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * @author =Troy= <Daniel Serdyukov>
+ */
+final class ProgressOutputStream extends FilterOutputStream {
+
+  private final long mTotal;
+
+  private final ProgressCallback mCallback;
+
+  private long mCurrent;
+
+  ProgressOutputStream(OutputStream out, long total, ProgressCallback callback) {
+    super(out);
+    mTotal = total;
+    mCallback = callback;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    out.write(b);
+    onWritten(1);
+  }
+
+  @Override
+  public void write(byte[] buffer, int offset, int count) throws IOException {
+    out.write(buffer, offset, count);
+    onWritten(count);
+  }
+
+  private void onWritten(int count) {
+    mCurrent += count;
+    if (mCallback != null) {
+      mCallback.onProgress(mCurrent, mTotal);
+    }
+  }
+
+}
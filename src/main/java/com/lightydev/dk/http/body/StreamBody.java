@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.body;
+
+import com.lightydev.dk.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Sends the stream once and closes it, a retried request fails to write the body again.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public class StreamBody extends StreamingBody {
+
+  private final InputStream mContent;
+
+  private final long mLength;
+
+  private final String mContentType;
+
+  public StreamBody(InputStream content) {
+    this(content, -1, OCTET_STREAM);
+  }
+
+  /**
+   * @param length size in bytes or -1 to send the stream chunked
+   */
+  public StreamBody(InputStream content, long length, String contentType) {
+    mContent = content;
+    mLength = length;
+    mContentType = contentType;
+  }
+
+  @Override
+  public long getContentLength() {
+    return mLength;
+  }
+
+  @Override
+  public String getContentType() {
+    return mContentType;
+  }
+
+  @Override
+  public boolean isReplayable() {
+    return false;
+  }
+
+  @Override
+  protected void writeContent(OutputStream out) throws IOException {
+    try {
+      IOUtils.copy(mContent, out);
+    } finally {
+      IOUtils.closeQuietly(mContent);
+    }
+  }
+
+}
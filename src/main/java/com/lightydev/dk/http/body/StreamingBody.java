@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.body;
+
+import com.lightydev.dk.http.Http;
+import com.lightydev.dk.http.callback.ProgressCallback;
+import com.lightydev.dk.io.IOUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Base of bodies that are streamed to the connection instead of being built in memory. Bodies of
+ * a known length use fixed-length streaming mode, the rest are sent chunked.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public abstract class StreamingBody implements HttpBody {
+
+  public static final String OCTET_STREAM = "application/octet-stream";
+
+  private final AtomicReference<ProgressCallback> mProgressCallback = new AtomicReference<>();
+
+  public StreamingBody setProgressCallback(ProgressCallback callback) {
+    mProgressCallback.set(callback);
+    return this;
+  }
+
+  @Override
+  public void writeTo(HttpURLConnection cn) throws IOException {
+    final long length = getContentLength();
+    cn.setDoOutput(true);
+    if (length >= 0 && length <= Integer.MAX_VALUE) {
+      cn.setFixedLengthStreamingMode((int) length);
+    } else {
+      cn.setChunkedStreamingMode(0);
+    }
+    cn.setRequestProperty(Http.Header.CONTENT_TYPE, getContentType());
+    final OutputStream out = new ProgressOutputStream(cn.getOutputStream(), length, mProgressCallback.get());
+    try {
+      writeContent(out);
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  /**
+   * @return false if the content can be written only once
+   */
+  public boolean isReplayable() {
+    return true;
+  }
+
+  /**
+   * @return size in bytes or -1 if it is unknown
+   */
+  public abstract long getContentLength();
+
+  public abstract String getContentType();
+
+  protected abstract void writeContent(OutputStream out) throws IOException;
+
+}
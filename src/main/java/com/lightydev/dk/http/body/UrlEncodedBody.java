@@ -38,6 +38,8 @@ public class UrlEncodedBody implements HttpBody {
 
   private final Map<String, String> mFormData = new TreeMap<>();
 
+  private int mGzipThreshold = -1;
+
   public UrlEncodedBody() {
     this(Charset.defaultCharset());
   }
@@ -56,6 +58,17 @@ public class UrlEncodedBody implements HttpBody {
     return this;
   }
 
+  /**
+   * Sends bodies longer than the threshold gzipped. The server has to accept gzip request bodies.
+   *
+   * @param threshold size in bytes, negative value disables compression
+   * @since 2.4.0
+   */
+  public UrlEncodedBody setGzipThreshold(int threshold) {
+    mGzipThreshold = threshold;
+    return this;
+  }
+
   @Override
   public String toString() {
     return HttpUtils.toQueryString(mFormData);
@@ -63,7 +76,11 @@ public class UrlEncodedBody implements HttpBody {
 
   @Override
   public void writeTo(HttpURLConnection cn) throws IOException {
-    final byte[] data = toString().getBytes(mCharset);
+    byte[] data = toString().getBytes(mCharset);
+    if (mGzipThreshold >= 0 && data.length > mGzipThreshold) {
+      data = IOUtils.gzip(data);
+      cn.setRequestProperty(Http.Header.CONTENT_ENCODING, HttpUtils.GZIP);
+    }
     cn.setDoOutput(true);
     cn.setFixedLengthStreamingMode(data.length);
     cn.setRequestProperty(Http.Header.CONTENT_TYPE, getContentType());
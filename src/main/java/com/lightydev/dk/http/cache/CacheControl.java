@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.cache;
+
+import android.text.TextUtils;
+
+import com.lightydev.dk.http.HttpDate;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Freshness of a response computed from its Cache-Control, Expires, Date and Age headers.
+ * The freshness lifetime is taken from s-maxage, max-age or Expires (in that order) and reduced
+ * by the age the response already had when it was received.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ */
+public final class CacheControl {
+
+  public static final String NO_STORE = "no-store";
+
+  public static final String NO_CACHE = "no-cache";
+
+  public static final String MUST_REVALIDATE = "must-revalidate";
+
+  public static final String MAX_AGE = "max-age";
+
+  public static final String S_MAXAGE = "s-maxage";
+
+  public static final String STALE_WHILE_REVALIDATE = "stale-while-revalidate";
+
+  public static final String STALE_IF_ERROR = "stale-if-error";
+
+  private final Map<String, String> mDirectives;
+
+  private final long mExpires;
+
+  private CacheControl(Map<String, String> directives, long expires) {
+    mDirectives = directives;
+    mExpires = expires;
+  }
+
+  public static CacheControl parse(Map<String, String> headers, long responseTime) {
+    final Map<String, String> directives = parseDirectives(headers.get(CachePolicy.Header.CACHE_CONTROL));
+    final long date = parseDate(headers.get(CachePolicy.Header.DATE), responseTime);
+    final long age = Math.max(Math.max(0, responseTime - date), parseSeconds(headers.get(CachePolicy.Header.AGE)));
+    final long lifetime = getFreshnessLifetime(directives, headers, date);
+    return new CacheControl(directives, responseTime + lifetime - age);
+  }
+
+  private static Map<String, String> parseDirectives(String header) {
+    final Map<String, String> directives = new HashMap<>();
+    if (!TextUtils.isEmpty(header)) {
+      for (final String directive : header.split(",")) {
+        final String[] keyValue = directive.trim().split("=", 2);
+        final String value = keyValue.length > 1 ? keyValue[1].trim().replace("\"", "") : "";
+        directives.put(keyValue[0].trim().toLowerCase(Locale.US), value);
+      }
+    }
+    return directives;
+  }
+
+  private static long getFreshnessLifetime(Map<String, String> directives, Map<String, String> headers,
+                                           long date) {
+    if (directives.containsKey(S_MAXAGE)) {
+      return parseSeconds(directives.get(S_MAXAGE));
+    }
+    if (directives.containsKey(MAX_AGE)) {
+      return parseSeconds(directives.get(MAX_AGE));
+    }
+    final String expires = headers.get(CachePolicy.Header.EXPIRES);
+    if (!TextUtils.isEmpty(expires)) {
+      return Math.max(0, HttpDate.parse(expires).getTime() - date);
+    }
+    return 0;
+  }
+
+  private static long parseDate(String value, long defaultValue) {
+    if (TextUtils.isEmpty(value)) {
+      return defaultValue;
+    }
+    final long date = HttpDate.parse(value).getTime();
+    return date > 0 ? date : defaultValue;
+  }
+
+  private static long parseSeconds(String value) {
+    if (TextUtils.isEmpty(value)) {
+      return 0;
+    }
+    try {
+      return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  public boolean isNoStore() {
+    return mDirectives.containsKey(NO_STORE);
+  }
+
+  public boolean isNoCache() {
+    return mDirectives.containsKey(NO_CACHE);
+  }
+
+  /**
+   * @return time in millis after which the response is stale
+   */
+  public long getExpires() {
+    return mExpires;
+  }
+
+  /**
+   * @return millis after expiration during which the response may be served while it is revalidated
+   */
+  public long getStaleWhileRevalidate() {
+    if (mDirectives.containsKey(MUST_REVALIDATE)) {
+      return 0;
+    }
+    return parseSeconds(mDirectives.get(STALE_WHILE_REVALIDATE));
+  }
+
+  /**
+   * @return millis after expiration during which the response may be served if revalidation fails
+   */
+  public long getStaleIfError() {
+    if (mDirectives.containsKey(MUST_REVALIDATE)) {
+      return 0;
+    }
+    return parseSeconds(mDirectives.get(STALE_IF_ERROR));
+  }
+
+  @Override
+  public String toString() {
+    return "CacheControl{" +
+        "directives=" + mDirectives +
+        ", expires=" + HttpDate.format(mExpires) +
+        '}';
+  }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.cache;
+
+import android.text.TextUtils;
+
+import com.lightydev.dk.io.IOUtils;
+import com.lightydev.dk.log.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Append-only log of {@link DiskCacheStore} index changes. Replaying it restores the index and
+ * its access order, {@link #rebuild(Collection)} compacts it to one CLEAN line per entry.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ */
+final class CacheJournal {
+
+  static final String CLEAN = "CLEAN";
+
+  static final String REMOVE = "REMOVE";
+
+  static final String READ = "READ";
+
+  private static final String MAGIC = "dk.cache.journal 4";
+
+  private static final String SEPARATOR = " ";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final int MAX_REDUNDANT_OPS = 2000;
+
+  private final File mJournalFile;
+
+  private final File mTempFile;
+
+  private Writer mWriter;
+
+  private int mOpCount;
+
+  CacheJournal(File cacheDir) {
+    mJournalFile = new File(cacheDir, "journal");
+    mTempFile = new File(cacheDir, "journal.tmp");
+  }
+
+  synchronized void replay(Map<String, IndexEntry> index) {
+    if (mJournalFile.exists()) {
+      try {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(mJournalFile), UTF_8));
+        try {
+          readLines(reader, index);
+        } finally {
+          IOUtils.closeQuietly(reader);
+        }
+      } catch (IOException | IllegalArgumentException e) {
+        Logger.quiet("%s", e);
+      }
+    }
+    rebuild(index.values());
+  }
+
+  synchronized void clean(IndexEntry entry) {
+    appendLine(entry.toJournalLine());
+  }
+
+  synchronized void remove(String key) {
+    appendLine(REMOVE + SEPARATOR + key);
+  }
+
+  synchronized void read(String key, long time) {
+    appendLine(READ + SEPARATOR + key + SEPARATOR + time);
+  }
+
+  synchronized void flush() {
+    if (mWriter != null) {
+      try {
+        mWriter.flush();
+      } catch (IOException e) {
+        Logger.quiet("%s", e);
+      }
+    }
+  }
+
+  synchronized boolean isRebuildRequired(int indexSize) {
+    return mOpCount >= MAX_REDUNDANT_OPS && mOpCount >= indexSize;
+  }
+
+  synchronized void rebuild(Collection<IndexEntry> entries) {
+    close();
+    try {
+      final Writer writer = openWriter(mTempFile, false);
+      try {
+        writer.write(MAGIC);
+        writer.write('\n');
+        for (final IndexEntry entry : entries) {
+          writer.write(entry.toJournalLine());
+          writer.write('\n');
+        }
+      } finally {
+        IOUtils.closeQuietly(writer);
+      }
+      if (!mTempFile.renameTo(mJournalFile)) {
+        throw new IOException("Can't rename " + mTempFile);
+      }
+      mWriter = openWriter(mJournalFile, true);
+      mOpCount = 0;
+    } catch (IOException e) {
+      Logger.error(e);
+    }
+  }
+
+  synchronized void delete() {
+    close();
+    if (!mJournalFile.delete()) {
+      Logger.quiet("Can't delete %s", mJournalFile);
+    }
+  }
+
+  boolean isJournalFile(File file) {
+    return mJournalFile.equals(file) || mTempFile.equals(file);
+  }
+
+  private void readLines(BufferedReader reader, Map<String, IndexEntry> index) throws IOException {
+    if (!TextUtils.equals(MAGIC, reader.readLine())) {
+      return;
+    }
+    String line;
+    while ((line = reader.readLine()) != null) {
+      final String[] fields = line.split(SEPARATOR, 3);
+      if (CLEAN.equals(fields[0])) {
+        final IndexEntry entry = IndexEntry.fromJournalLine(line);
+        index.put(entry.getKey(), entry);
+      } else if (REMOVE.equals(fields[0]) && fields.length > 1) {
+        index.remove(fields[1]);
+      } else if (READ.equals(fields[0]) && fields.length > 2) {
+        final IndexEntry entry = index.get(fields[1]);
+        if (entry != null) {
+          entry.setLastAccess(Long.parseLong(fields[2]));
+        }
+      }
+    }
+  }
+
+  private void appendLine(String line) {
+    if (mWriter != null) {
+      try {
+        mWriter.write(line);
+        mWriter.write('\n');
+        ++mOpCount;
+      } catch (IOException e) {
+        Logger.quiet("%s", e);
+      }
+    }
+  }
+
+  private Writer openWriter(File file, boolean append) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), UTF_8));
+  }
+
+  private void close() {
+    if (mWriter != null) {
+      IOUtils.closeQuietly(mWriter);
+      mWriter = null;
+    }
+  }
+
+}
@@ -33,6 +33,11 @@ public interface CachePolicy {
 
   boolean shouldCache(String url, Map<String, String> headers);
 
+  /**
+   * @since 2.4.0
+   */
+  CacheControl getCacheControl(String url, Map<String, String> headers);
+
   interface Header {
 
     String ETAG = "ETag";
@@ -43,6 +48,10 @@ public interface CachePolicy {
 
     String CACHE_CONTROL = "Cache-Control";
 
+    String DATE = "Date";
+
+    String AGE = "Age";
+
   }
 
 }
@@ -18,6 +18,8 @@ package com.lightydev.dk.http.cache;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 /**
@@ -37,18 +39,59 @@ public interface CacheStore {
 
   Entry update(String url, Map<String, String> headers);
 
+  /**
+   * @return editor that writes a new entry for the url or null if the store can't write one
+   * @since 2.4.0
+   */
+  Editor edit(String url, Map<String, String> headers);
+
   boolean clear();
 
   interface Entry {
 
     boolean isExpired();
 
+    /**
+     * @return true if the entry may be served while a revalidation runs in background
+     * @since 2.4.0
+     */
+    boolean canRevalidateInBackground();
+
+    /**
+     * @return true if the entry may be served when revalidation fails
+     * @since 2.4.0
+     */
+    boolean canServeOnError();
+
     InputStream getContent() throws IOException;
 
+    /**
+     * @return read-only view of the body that doesn't copy it onto the heap
+     * @since 2.4.0
+     */
+    ByteBuffer map() throws IOException;
+
     String getETag();
 
     long getLastModified();
 
   }
 
+  interface Editor {
+
+    /**
+     * @return true if the editor expects the body as it came over the wire, still encoded with
+     * its Content-Encoding
+     * @since 2.4.0
+     */
+    boolean acceptsEncoded();
+
+    OutputStream newOutputStream() throws IOException;
+
+    Entry commit() throws IOException;
+
+    void abort();
+
+  }
+
 }
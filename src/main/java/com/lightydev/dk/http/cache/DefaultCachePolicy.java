@@ -16,8 +16,6 @@
 
 package com.lightydev.dk.http.cache;
 
-import android.text.TextUtils;
-
 import java.util.Map;
 
 /**
@@ -25,8 +23,6 @@ import java.util.Map;
  */
 public class DefaultCachePolicy implements CachePolicy {
 
-  private static final String NO_CACHE = "no-cache";
-
   @Override
   public boolean ignoreCache(String url) {
     return false;
@@ -39,8 +35,13 @@ public class DefaultCachePolicy implements CachePolicy {
 
   @Override
   public boolean shouldCache(String url, Map<String, String> headers) {
-    final String header = headers.get(Header.CACHE_CONTROL);
-    return (TextUtils.isEmpty(header) || !header.contains(NO_CACHE)) && shouldCache(url);
+    final CacheControl cacheControl = getCacheControl(url, headers);
+    return !cacheControl.isNoStore() && !cacheControl.isNoCache() && shouldCache(url);
+  }
+
+  @Override
+  public CacheControl getCacheControl(String url, Map<String, String> headers) {
+    return CacheControl.parse(headers, System.currentTimeMillis());
   }
 
 }
@@ -19,29 +19,85 @@ package com.lightydev.dk.http.cache;
 import android.text.TextUtils;
 
 import com.lightydev.dk.DroidKit;
+import com.lightydev.dk.http.Http;
 import com.lightydev.dk.http.HttpDate;
 import com.lightydev.dk.http.HttpUtils;
+import com.lightydev.dk.io.ByteArrayPool;
 import com.lightydev.dk.io.IOUtils;
+import com.lightydev.dk.io.PoolOutputStream;
 import com.lightydev.dk.log.Logger;
+import com.lightydev.dk.os.BackgroundThread;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 /**
+ * Entry metadata lives in an in-memory LRU index that is loaded from the journal on first use,
+ * so {@link #contains(String)} and {@link #get(String)} never touch the file system. Entries
+ * are evicted on the background thread once the store grows over its byte budget.
+ * <p/>
+ * Bodies are written to a temp file, synced and renamed into place under the index lock together with
+ * the index update, so readers never see a body with another entry's metadata. A recovery pass after
+ * loading drops entries whose body is missing or has a wrong length, and every full read verifies the
+ * CRC32 stored in the index. Bodies may also be mapped into memory with {@link Entry#map()}; the mapping
+ * is verified once per process.
+ * <p/>
+ * With {@link #setStoreCompressed(boolean)} gzip or deflate bodies are stored as they came over
+ * the wire and decoded on read.
+ *
  * @author =Troy= <Daniel Serdyukov>
  */
 public class DiskCacheStore implements CacheStore {
 
-  private static final String UNIX_HIDDEN = ".";
+  public static final long DEFAULT_MAX_SIZE = 50L * 1024 * 1024;
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private static final long JOURNAL_FLUSH_DELAY = 1000;
+
+  private final Map<String, IndexEntry> mIndex = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final AtomicBoolean mTrimScheduled = new AtomicBoolean();
+
+  private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
 
-  // TODO: add 'Cache-Control: max-age' support later
-  //private static final Pattern MAX_AGE = Pattern.compile("max\\-age=([\\d]+)");
+  private final AtomicBoolean mStoreCompressed = new AtomicBoolean();
+
+  private final Runnable mTrimCmd = new Runnable() {
+    @Override
+    public void run() {
+      mTrimScheduled.set(false);
+      trimToSize();
+    }
+  };
+
+  private final Runnable mFlushCmd = new Runnable() {
+    @Override
+    public void run() {
+      mFlushScheduled.set(false);
+      synchronized (mIndex) {
+        if (mJournal.isRebuildRequired(mIndex.size())) {
+          mJournal.rebuild(mIndex.values());
+        }
+      }
+      mJournal.flush();
+    }
+  };
 
   private final File mCacheDir;
 
@@ -49,6 +105,14 @@ public class DiskCacheStore implements CacheStore {
 
   private final boolean mDebugMode;
 
+  private final long mMaxSize;
+
+  private final CacheJournal mJournal;
+
+  private long mSize;
+
+  private boolean mLoaded;
+
   public DiskCacheStore(File cacheDir) {
     this(cacheDir, CachePolicy.DEFAULT);
   }
@@ -62,9 +126,25 @@ public class DiskCacheStore implements CacheStore {
   }
 
   public DiskCacheStore(File cacheDir, CachePolicy policy, boolean debugMode) {
+    this(cacheDir, policy, DEFAULT_MAX_SIZE, debugMode);
+  }
+
+  /**
+   * @since 2.4.0
+   */
+  public DiskCacheStore(File cacheDir, long maxSize) {
+    this(cacheDir, CachePolicy.DEFAULT, maxSize, false);
+  }
+
+  /**
+   * @since 2.4.0
+   */
+  public DiskCacheStore(File cacheDir, CachePolicy policy, long maxSize, boolean debugMode) {
     mCacheDir = cacheDir;
     mCachePolicy = policy;
+    mMaxSize = maxSize;
     mDebugMode = debugMode;
+    mJournal = new CacheJournal(cacheDir);
     if (!mCacheDir.exists() && !mCacheDir.mkdirs() && DroidKit.isInDebugMode()) {
       Logger.error("Can't create cache dir");
     }
@@ -74,6 +154,13 @@ public class DiskCacheStore implements CacheStore {
     return HttpUtils.getUrlHash(url);
   }
 
+  private static long parseDate(String value) {
+    if (TextUtils.isEmpty(value)) {
+      return 0;
+    }
+    return HttpDate.parse(value).getTime();
+  }
+
   @Override
   public CachePolicy getPolicy() {
     return mCachePolicy;
@@ -81,115 +168,344 @@ public class DiskCacheStore implements CacheStore {
 
   @Override
   public boolean contains(String url) {
-    return new File(mCacheDir, getFileName(url)).exists();
+    synchronized (mIndex) {
+      ensureLoaded();
+      return mIndex.containsKey(getFileName(url));
+    }
   }
 
   @Override
   public Entry get(String url) {
     final String fileName = getFileName(url);
-    final File cacheFile = new File(mCacheDir, fileName);
-    final File metaFile = new File(mCacheDir, UNIX_HIDDEN + fileName);
-    if (cacheFile.exists() && metaFile.exists()) {
-      try {
-        final DataInputStream meta = new DataInputStream(new FileInputStream(metaFile));
-        try {
-          return new Entry(cacheFile, meta.readUTF(), meta.readLong(), meta.readLong());
-        } finally {
-          IOUtils.closeQuietly(meta);
-        }
-      } catch (IOException e) {
-        if (mDebugMode) {
-          Logger.error(e);
-        }
-        removeCacheEntry(cacheFile, metaFile);
+    final IndexEntry indexEntry;
+    synchronized (mIndex) {
+      ensureLoaded();
+      indexEntry = mIndex.get(fileName);
+      if (indexEntry == null) {
+        return null;
       }
+      indexEntry.setLastAccess(System.currentTimeMillis());
+      mJournal.read(fileName, indexEntry.getLastAccess());
     }
-    return null;
+    scheduleJournalFlush();
+    return newEntry(indexEntry);
   }
 
   @Override
   public Entry put(String url, Map<String, String> headers, InputStream content) {
-    final String fileName = getFileName(url);
-    final File cacheFile = new File(mCacheDir, fileName);
-    final File metaFile = new File(mCacheDir, UNIX_HIDDEN + fileName);
+    final Editor editor = new Editor(url, headers, false);
     try {
-      saveMetaFile(metaFile, headers);
-      saveCacheFile(cacheFile, content);
+      final OutputStream cache = editor.newOutputStream();
+      try {
+        IOUtils.copy(content, cache);
+      } finally {
+        IOUtils.closeQuietly(cache);
+      }
+      return editor.commit();
     } catch (IOException e) {
       if (mDebugMode) {
         Logger.error(e);
       }
-      removeCacheEntry(cacheFile, metaFile);
+      editor.abort();
     }
-    return get(url);
+    return null;
   }
 
   @Override
   public Entry update(String url, Map<String, String> headers) {
     final String fileName = getFileName(url);
-    final File cacheFile = new File(mCacheDir, fileName);
-    final File metaFile = new File(mCacheDir, UNIX_HIDDEN + fileName);
-    if (cacheFile.exists() && metaFile.exists()) {
-      try {
-        saveMetaFile(metaFile, headers);
-      } catch (IOException e) {
-        if (mDebugMode) {
-          Logger.error(e);
-        }
-        removeCacheEntry(cacheFile, metaFile);
+    final IndexEntry indexEntry;
+    synchronized (mIndex) {
+      ensureLoaded();
+      final IndexEntry prevEntry = mIndex.get(fileName);
+      if (prevEntry == null) {
+        return null;
       }
+      indexEntry = newIndexEntry(url, prevEntry.getSize(), prevEntry.getChecksum(), headers)
+          .setEncoding(prevEntry.getEncoding());
+      mIndex.put(fileName, indexEntry);
+      mJournal.clean(indexEntry);
     }
-    return get(url);
+    scheduleJournalFlush();
+    return newEntry(indexEntry);
+  }
+
+  @Override
+  public Editor edit(String url, Map<String, String> headers) {
+    return new Editor(url, headers, mStoreCompressed.get());
   }
 
   @Override
   public boolean clear() {
+    synchronized (mIndex) {
+      mIndex.clear();
+      mSize = 0;
+      mJournal.delete();
+      mLoaded = false;
+    }
+    boolean cleared = true;
     for (final File file : mCacheDir.listFiles()) {
-      if (!file.delete() && DroidKit.isInDebugMode()) {
-        Logger.error("Can't delete cached file");
+      if (!file.delete()) {
+        cleared = false;
+        if (DroidKit.isInDebugMode()) {
+          Logger.error("Can't delete cached file");
+        }
       }
     }
-    return mCacheDir.delete();
+    return cleared;
   }
 
-  private void saveMetaFile(File metaFile, Map<String, String> headers) throws IOException {
-    final DataOutputStream meta = new DataOutputStream(new FileOutputStream(metaFile));
-    try {
-      writeUTF(meta, headers.get(CachePolicy.Header.ETAG));
-      writeLong(meta, headers.get(CachePolicy.Header.LAST_MODIFIED));
-      writeLong(meta, headers.get(CachePolicy.Header.EXPIRES));
-    } finally {
-      IOUtils.closeQuietly(meta);
+  public long getSize() {
+    synchronized (mIndex) {
+      ensureLoaded();
+      return mSize;
+    }
+  }
+
+  public long getMaxSize() {
+    return mMaxSize;
+  }
+
+  /**
+   * @param compressed store encoded bodies as is and decode them on read
+   * @since 2.4.0
+   */
+  public void setStoreCompressed(boolean compressed) {
+    mStoreCompressed.set(compressed);
+  }
+
+  private void ensureLoaded() {
+    if (!mLoaded) {
+      mLoaded = true;
+      mJournal.replay(mIndex);
+      for (final IndexEntry indexEntry : mIndex.values()) {
+        mSize += indexEntry.getSize();
+      }
+      final long loadTime = System.currentTimeMillis();
+      BackgroundThread.getHandler().post(new Runnable() {
+        @Override
+        public void run() {
+          recover(loadTime);
+        }
+      });
+      scheduleTrim();
     }
   }
 
-  private void writeUTF(DataOutputStream meta, String etag) throws IOException {
-    if (TextUtils.isEmpty(etag)) {
-      meta.writeUTF("");
-    } else {
-      meta.writeUTF(etag);
+  private void recover(long loadTime) {
+    final List<IndexEntry> indexEntries;
+    synchronized (mIndex) {
+      indexEntries = new ArrayList<>(mIndex.values());
     }
+    for (final IndexEntry indexEntry : indexEntries) {
+      removeIfTruncated(indexEntry);
+    }
+    final File[] files = mCacheDir.listFiles();
+    if (files != null) {
+      for (final File file : files) {
+        deleteIfStale(file, loadTime);
+      }
+    }
+    scheduleJournalFlush();
   }
 
-  private void writeLong(DataOutputStream meta, String lastModified) throws IOException {
-    if (TextUtils.isEmpty(lastModified)) {
-      meta.writeLong(0);
-    } else {
-      meta.writeLong(HttpDate.parse(lastModified).getTime());
+  /**
+   * The length is checked under the index lock, a commit renames its file and swaps the entry under
+   * the same lock, so a new body is never measured against the entry it replaces.
+   */
+  private void removeIfTruncated(IndexEntry indexEntry) {
+    synchronized (mIndex) {
+      if (new File(mCacheDir, indexEntry.getKey()).length() != indexEntry.getSize()) {
+        removeLocked(indexEntry);
+      }
     }
   }
 
-  private void saveCacheFile(File cacheFile, InputStream content) throws IOException {
-    final FileOutputStream cache = new FileOutputStream(cacheFile);
-    try {
-      IOUtils.copy(content, cache);
-    } finally {
-      IOUtils.closeQuietly(cache);
+  private void deleteIfStale(File file, long loadTime) {
+    if (file.getName().endsWith(TEMP_SUFFIX)) {
+      if (file.lastModified() < loadTime) {
+        deleteFile(file);
+      }
+      return;
+    }
+    synchronized (mIndex) {
+      if (!mIndex.containsKey(file.getName()) && !mJournal.isJournalFile(file)) {
+        deleteFile(file);
+      }
     }
   }
 
-  private boolean removeCacheEntry(File cacheFile, File metaFile) {
-    return metaFile.delete() && cacheFile.delete();
+  private void remove(IndexEntry indexEntry) {
+    synchronized (mIndex) {
+      removeLocked(indexEntry);
+    }
+    scheduleJournalFlush();
+  }
+
+  /**
+   * Expects the index lock. Deletes the file only while the index still holds this very entry for it,
+   * a reader holding a replaced entry must not delete the body that replaced it.
+   */
+  private void removeLocked(IndexEntry indexEntry) {
+    final String fileName = indexEntry.getKey();
+    final IndexEntry currentEntry = mIndex.remove(fileName);
+    if (currentEntry == indexEntry) {
+      mSize -= indexEntry.getSize();
+      mJournal.remove(fileName);
+      deleteFile(new File(mCacheDir, fileName));
+    } else if (currentEntry != null) {
+      mIndex.put(fileName, currentEntry);
+    }
+  }
+
+  private IndexEntry newIndexEntry(String url, long size, long checksum, Map<String, String> headers) {
+    final CacheControl cacheControl = mCachePolicy.getCacheControl(url, headers);
+    return new IndexEntry(getFileName(url), size, checksum)
+        .setETag(headers.get(CachePolicy.Header.ETAG))
+        .setLastModified(parseDate(headers.get(CachePolicy.Header.LAST_MODIFIED)))
+        .setExpires(cacheControl.getExpires())
+        .setStaleWhileRevalidate(cacheControl.getStaleWhileRevalidate())
+        .setStaleIfError(cacheControl.getStaleIfError())
+        .setLastAccess(System.currentTimeMillis());
+  }
+
+  private Entry newEntry(final IndexEntry indexEntry) {
+    return new Entry(
+        new File(mCacheDir, indexEntry.getKey()),
+        indexEntry,
+        new Runnable() {
+          @Override
+          public void run() {
+            remove(indexEntry);
+          }
+        }
+    );
+  }
+
+  /**
+   * Renames the body into place and swaps the index entry in one step under the index lock.
+   */
+  private Entry commitEntry(File tempFile, IndexEntry indexEntry) throws IOException {
+    synchronized (mIndex) {
+      ensureLoaded();
+      if (!tempFile.renameTo(new File(mCacheDir, indexEntry.getKey()))) {
+        throw new IOException("Can't commit cache entry " + indexEntry.getKey());
+      }
+      final IndexEntry prevEntry = mIndex.put(indexEntry.getKey(), indexEntry);
+      if (prevEntry != null) {
+        mSize -= prevEntry.getSize();
+      }
+      mSize += indexEntry.getSize();
+      mJournal.clean(indexEntry);
+      if (mSize > mMaxSize) {
+        scheduleTrim();
+      }
+    }
+    scheduleJournalFlush();
+    return newEntry(indexEntry);
+  }
+
+  private void trimToSize() {
+    synchronized (mIndex) {
+      final Iterator<IndexEntry> iterator = mIndex.values().iterator();
+      while (mSize > mMaxSize && iterator.hasNext()) {
+        final IndexEntry indexEntry = iterator.next();
+        iterator.remove();
+        mSize -= indexEntry.getSize();
+        mJournal.remove(indexEntry.getKey());
+        deleteFile(new File(mCacheDir, indexEntry.getKey()));
+      }
+    }
+    scheduleJournalFlush();
+  }
+
+  private void scheduleTrim() {
+    if (mTrimScheduled.compareAndSet(false, true)) {
+      BackgroundThread.getHandler().post(mTrimCmd);
+    }
+  }
+
+  private void scheduleJournalFlush() {
+    if (mFlushScheduled.compareAndSet(false, true)) {
+      BackgroundThread.getHandler().postDelayed(mFlushCmd, JOURNAL_FLUSH_DELAY);
+    }
+  }
+
+  private void deleteFile(File file) {
+    if (!file.delete() && mDebugMode) {
+      Logger.error("Can't delete %s", file);
+    }
+  }
+
+  private final class Editor implements CacheStore.Editor {
+
+    private final String mUrl;
+
+    private final Map<String, String> mHeaders;
+
+    private final CRC32 mChecksum = new CRC32();
+
+    private final boolean mEncoded;
+
+    private File mTempFile;
+
+    Editor(String url, Map<String, String> headers, boolean encoded) {
+      mUrl = url;
+      mHeaders = headers;
+      mEncoded = encoded;
+    }
+
+    @Override
+    public boolean acceptsEncoded() {
+      return mEncoded;
+    }
+
+    @Override
+    public OutputStream newOutputStream() throws IOException {
+      mTempFile = File.createTempFile(getFileName(mUrl), TEMP_SUFFIX, mCacheDir);
+      return new PoolOutputStream(new CheckedOutputStream(new FileOutputStream(mTempFile), mChecksum));
+    }
+
+    @Override
+    public Entry commit() throws IOException {
+      if (mTempFile == null || !sync(mTempFile)) {
+        abort();
+        throw new IOException("Can't commit cache entry " + getFileName(mUrl));
+      }
+      final IndexEntry indexEntry = newIndexEntry(mUrl, mTempFile.length(), mChecksum.getValue(), mHeaders);
+      if (mEncoded) {
+        indexEntry.setEncoding(mHeaders.get(Http.Header.CONTENT_ENCODING));
+      }
+      try {
+        return commitEntry(mTempFile, indexEntry);
+      } catch (IOException e) {
+        abort();
+        throw e;
+      }
+    }
+
+    private boolean sync(File file) {
+      try {
+        final FileOutputStream out = new FileOutputStream(file, true);
+        try {
+          out.getFD().sync();
+          return true;
+        } finally {
+          IOUtils.closeQuietly(out);
+        }
+      } catch (IOException e) {
+        Logger.quiet("%s", e);
+      }
+      return false;
+    }
+
+    @Override
+    public void abort() {
+      if (mTempFile != null) {
+        deleteFile(mTempFile);
+      }
+    }
+
   }
 
   public static class Entry implements CacheStore.Entry {
@@ -202,11 +518,46 @@ public class DiskCacheStore implements CacheStore {
 
     private final long mExpires;
 
+    private final long mStaleWhileRevalidate;
+
+    private final long mStaleIfError;
+
+    private final long mSize;
+
+    private final long mChecksum;
+
+    private final Runnable mOnCorrupted;
+
+    private final IndexEntry mIndexEntry;
+
+    private final String mEncoding;
+
     public Entry(File cacheFile, String etag, long lastModified, long expires) {
       mCacheFile = cacheFile;
       mETag = etag;
       mLastModified = lastModified;
       mExpires = expires;
+      mStaleWhileRevalidate = 0;
+      mStaleIfError = 0;
+      mSize = -1;
+      mChecksum = -1;
+      mOnCorrupted = null;
+      mIndexEntry = null;
+      mEncoding = null;
+    }
+
+    Entry(File cacheFile, IndexEntry indexEntry, Runnable onCorrupted) {
+      mCacheFile = cacheFile;
+      mETag = indexEntry.getETag();
+      mLastModified = indexEntry.getLastModified();
+      mExpires = indexEntry.getExpires();
+      mStaleWhileRevalidate = indexEntry.getStaleWhileRevalidate();
+      mStaleIfError = indexEntry.getStaleIfError();
+      mSize = indexEntry.getSize();
+      mChecksum = indexEntry.getChecksum();
+      mOnCorrupted = onCorrupted;
+      mIndexEntry = indexEntry;
+      mEncoding = indexEntry.getEncoding();
     }
 
     @Override
@@ -214,9 +565,69 @@ public class DiskCacheStore implements CacheStore {
       return mExpires < System.currentTimeMillis();
     }
 
+    @Override
+    public boolean canRevalidateInBackground() {
+      return System.currentTimeMillis() < mExpires + mStaleWhileRevalidate;
+    }
+
+    @Override
+    public boolean canServeOnError() {
+      return System.currentTimeMillis() < mExpires + mStaleIfError;
+    }
+
     @Override
     public InputStream getContent() throws IOException {
-      return new FileInputStream(mCacheFile);
+      final InputStream content = openContent();
+      try {
+        return HttpUtils.decodeContent(content, mEncoding);
+      } catch (IOException e) {
+        IOUtils.closeQuietly(content);
+        if (mOnCorrupted != null) {
+          mOnCorrupted.run();
+        }
+        throw e;
+      }
+    }
+
+    /**
+     * Encoded bodies are decoded onto the heap, the rest is mapped.
+     */
+    @Override
+    public ByteBuffer map() throws IOException {
+      if (mEncoding != null) {
+        final InputStream content = getContent();
+        try {
+          return ByteBuffer.wrap(IOUtils.toByteArray(content)).asReadOnlyBuffer();
+        } finally {
+          IOUtils.closeQuietly(content);
+        }
+      }
+      final FileInputStream fis = new FileInputStream(mCacheFile);
+      try {
+        final FileChannel channel = fis.getChannel();
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        verify(buffer);
+        return buffer;
+      } finally {
+        IOUtils.closeQuietly(fis);
+      }
+    }
+
+    /**
+     * Unlike {@link #map()} the channel is not verified, the caller has to close it.
+     *
+     * @since 2.4.0
+     */
+    public FileChannel getChannel() throws IOException {
+      return new FileInputStream(mCacheFile).getChannel();
+    }
+
+    /**
+     * @return size of the stored body, encoded bodies report their encoded size, -1 if unknown
+     * @since 2.4.0
+     */
+    public long getSize() {
+      return mSize;
     }
 
     @Override
@@ -229,6 +640,41 @@ public class DiskCacheStore implements CacheStore {
       return mLastModified;
     }
 
+    private InputStream openContent() throws IOException {
+      if (mIndexEntry == null || mIndexEntry.isVerified()) {
+        return new FileInputStream(mCacheFile);
+      }
+      try {
+        return new VerifyingInputStream(new FileInputStream(mCacheFile), mChecksum, mSize, mOnCorrupted);
+      } catch (IOException e) {
+        mOnCorrupted.run();
+        throw e;
+      }
+    }
+
+    private void verify(ByteBuffer buffer) throws IOException {
+      if (mIndexEntry == null || mIndexEntry.isVerified()) {
+        return;
+      }
+      final ByteBuffer view = buffer.duplicate();
+      final CRC32 crc = new CRC32();
+      final byte[] chunk = ByteArrayPool.getInstance().obtain();
+      try {
+        while (view.hasRemaining()) {
+          final int count = Math.min(chunk.length, view.remaining());
+          view.get(chunk, 0, count);
+          crc.update(chunk, 0, count);
+        }
+      } finally {
+        ByteArrayPool.getInstance().free(chunk);
+      }
+      if (buffer.capacity() != mSize || crc.getValue() != mChecksum) {
+        mOnCorrupted.run();
+        throw new IOException("Corrupted cache entry: size=" + buffer.capacity() + "/" + mSize);
+      }
+      mIndexEntry.setVerified();
+    }
+
     @Override
     public String toString() {
       return "Entry{" +
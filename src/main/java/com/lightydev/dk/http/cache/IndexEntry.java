@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.cache;
+
+import android.text.TextUtils;
+
+/**
+ * In-memory metadata of a {@link DiskCacheStore} entry, persisted as a CLEAN line of the journal.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ */
+final class IndexEntry {
+
+  private static final String SEPARATOR = " ";
+
+  private static final String IDENTITY = "identity";
+
+  private static final int FIELDS = 11;
+
+  private final String mKey;
+
+  private final long mSize;
+
+  private final long mChecksum;
+
+  private String mEncoding = IDENTITY;
+
+  private String mETag = "";
+
+  private long mLastModified;
+
+  private long mExpires;
+
+  private long mStaleWhileRevalidate;
+
+  private long mStaleIfError;
+
+  private long mLastAccess;
+
+  private volatile boolean mVerified;
+
+  IndexEntry(String key, long size, long checksum) {
+    mKey = key;
+    mSize = size;
+    mChecksum = checksum;
+  }
+
+  static IndexEntry fromJournalLine(String line) {
+    final String[] fields = line.split(SEPARATOR, FIELDS);
+    if (fields.length < FIELDS - 1) {
+      throw new IllegalArgumentException(line);
+    }
+    return new IndexEntry(fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3]))
+        .setLastModified(Long.parseLong(fields[4]))
+        .setExpires(Long.parseLong(fields[5]))
+        .setStaleWhileRevalidate(Long.parseLong(fields[6]))
+        .setStaleIfError(Long.parseLong(fields[7]))
+        .setLastAccess(Long.parseLong(fields[8]))
+        .setEncoding(fields[9])
+        .setETag(fields.length == FIELDS ? fields[10] : "");
+  }
+
+  String toJournalLine() {
+    return CacheJournal.CLEAN + SEPARATOR + mKey + SEPARATOR + mSize + SEPARATOR + mChecksum
+        + SEPARATOR + mLastModified + SEPARATOR + mExpires + SEPARATOR + mStaleWhileRevalidate
+        + SEPARATOR + mStaleIfError + SEPARATOR + mLastAccess + SEPARATOR + mEncoding + SEPARATOR + mETag;
+  }
+
+  String getKey() {
+    return mKey;
+  }
+
+  long getSize() {
+    return mSize;
+  }
+
+  long getChecksum() {
+    return mChecksum;
+  }
+
+  /**
+   * @return Content-Encoding of the stored body or null if it is stored decoded
+   */
+  String getEncoding() {
+    if (IDENTITY.equals(mEncoding)) {
+      return null;
+    }
+    return mEncoding;
+  }
+
+  IndexEntry setEncoding(String encoding) {
+    mEncoding = TextUtils.isEmpty(encoding) ? IDENTITY : encoding.replace(SEPARATOR, "");
+    return this;
+  }
+
+  String getETag() {
+    return mETag;
+  }
+
+  IndexEntry setETag(String etag) {
+    mETag = etag == null ? "" : etag;
+    return this;
+  }
+
+  long getLastModified() {
+    return mLastModified;
+  }
+
+  IndexEntry setLastModified(long lastModified) {
+    mLastModified = lastModified;
+    return this;
+  }
+
+  long getExpires() {
+    return mExpires;
+  }
+
+  IndexEntry setExpires(long expires) {
+    mExpires = expires;
+    return this;
+  }
+
+  long getStaleWhileRevalidate() {
+    return mStaleWhileRevalidate;
+  }
+
+  IndexEntry setStaleWhileRevalidate(long staleWhileRevalidate) {
+    mStaleWhileRevalidate = staleWhileRevalidate;
+    return this;
+  }
+
+  long getStaleIfError() {
+    return mStaleIfError;
+  }
+
+  IndexEntry setStaleIfError(long staleIfError) {
+    mStaleIfError = staleIfError;
+    return this;
+  }
+
+  long getLastAccess() {
+    return mLastAccess;
+  }
+
+  IndexEntry setLastAccess(long lastAccess) {
+    mLastAccess = lastAccess;
+    return this;
+  }
+
+  boolean isVerified() {
+    return mVerified;
+  }
+
+  void setVerified() {
+    mVerified = true;
+  }
+
+}
@@ -38,4 +38,9 @@ public class NoCachePolicy implements CachePolicy {
     return false;
   }
 
+  @Override
+  public CacheControl getCacheControl(String url, Map<String, String> headers) {
+    return CacheControl.parse(headers, System.currentTimeMillis());
+  }
+
 }
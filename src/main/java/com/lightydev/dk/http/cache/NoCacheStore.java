@@ -49,6 +49,11 @@ public class NoCacheStore implements CacheStore {
     return null;
   }
 
+  @Override
+  public Editor edit(String url, Map<String, String> headers) {
+    return null;
+  }
+
   @Override
   public boolean clear() {
     return true;
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.cache;
+
+import android.util.LruCache;
+
+import com.lightydev.dk.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps small, hot bodies of another {@link CacheStore} on the heap. A body is admitted only
+ * when it is read from the backing store for the second time, so one-hit wonders never evict
+ * the hot set. Freshness and validators always come from the backing entry.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public class TieredCacheStore implements CacheStore {
+
+  public static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+
+  public static final int DEFAULT_MAX_ENTRY_SIZE = 32 * 1024;
+
+  private static final int MAX_CANDIDATES = 256;
+
+  private final CacheStore mCacheStore;
+
+  private final int mMaxEntrySize;
+
+  private final LruCache<String, MemoryEntry> mMemory;
+
+  private final Map<String, Boolean> mCandidates = new LinkedHashMap<String, Boolean>(MAX_CANDIDATES, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+      return size() > MAX_CANDIDATES;
+    }
+  };
+
+  private final AtomicLong mMemoryHits = new AtomicLong();
+
+  private final AtomicLong mDiskHits = new AtomicLong();
+
+  private final AtomicLong mMisses = new AtomicLong();
+
+  public TieredCacheStore(CacheStore cacheStore) {
+    this(cacheStore, DEFAULT_MAX_SIZE, DEFAULT_MAX_ENTRY_SIZE);
+  }
+
+  public TieredCacheStore(CacheStore cacheStore, int maxSize, int maxEntrySize) {
+    mCacheStore = cacheStore;
+    mMaxEntrySize = maxEntrySize;
+    mMemory = new LruCache<String, MemoryEntry>(maxSize) {
+      @Override
+      protected int sizeOf(String key, MemoryEntry value) {
+        return value.mContent.length;
+      }
+    };
+  }
+
+  @Override
+  public CachePolicy getPolicy() {
+    return mCacheStore.getPolicy();
+  }
+
+  @Override
+  public boolean contains(String url) {
+    return mMemory.get(url) != null || mCacheStore.contains(url);
+  }
+
+  @Override
+  public Entry get(String url) {
+    final MemoryEntry memoryEntry = mMemory.get(url);
+    if (memoryEntry != null) {
+      mMemoryHits.incrementAndGet();
+      return memoryEntry;
+    }
+    final Entry entry = mCacheStore.get(url);
+    if (entry == null) {
+      mMisses.incrementAndGet();
+      return null;
+    }
+    mDiskHits.incrementAndGet();
+    if (admit(url)) {
+      return promote(url, entry);
+    }
+    return entry;
+  }
+
+  @Override
+  public Entry put(String url, Map<String, String> headers, InputStream content) {
+    mMemory.remove(url);
+    return mCacheStore.put(url, headers, content);
+  }
+
+  @Override
+  public Entry update(String url, Map<String, String> headers) {
+    final Entry entry = mCacheStore.update(url, headers);
+    final MemoryEntry memoryEntry = mMemory.get(url);
+    if (entry != null && memoryEntry != null) {
+      mMemory.put(url, new MemoryEntry(entry, memoryEntry.mContent));
+    } else {
+      mMemory.remove(url);
+    }
+    return entry;
+  }
+
+  @Override
+  public Editor edit(String url, Map<String, String> headers) {
+    mMemory.remove(url);
+    final Editor editor = mCacheStore.edit(url, headers);
+    if (editor == null) {
+      return null;
+    }
+    return new InvalidatingEditor(url, editor);
+  }
+
+  @Override
+  public boolean clear() {
+    mMemory.evictAll();
+    synchronized (mCandidates) {
+      mCandidates.clear();
+    }
+    return mCacheStore.clear();
+  }
+
+  public double getMemoryHitRatio() {
+    return ratio(mMemoryHits.get());
+  }
+
+  public double getDiskHitRatio() {
+    return ratio(mDiskHits.get());
+  }
+
+  public int getMemorySize() {
+    return mMemory.size();
+  }
+
+  @Override
+  public String toString() {
+    return "TieredCacheStore{" +
+        "memory=" + mMemory.size() + "/" + mMemory.maxSize() +
+        ", memory-hits=" + mMemoryHits.get() +
+        ", disk-hits=" + mDiskHits.get() +
+        ", misses=" + mMisses.get() +
+        '}';
+  }
+
+  private boolean admit(String url) {
+    synchronized (mCandidates) {
+      if (mCandidates.remove(url) != null) {
+        return true;
+      }
+      mCandidates.put(url, Boolean.TRUE);
+      return false;
+    }
+  }
+
+  private Entry promote(String url, Entry entry) {
+    if (entry instanceof DiskCacheStore.Entry && ((DiskCacheStore.Entry) entry).getSize() > mMaxEntrySize) {
+      return entry;
+    }
+    try {
+      final byte[] content = readAtMost(entry, mMaxEntrySize);
+      if (content == null) {
+        return entry;
+      }
+      final MemoryEntry memoryEntry = new MemoryEntry(entry, content);
+      mMemory.put(url, memoryEntry);
+      return memoryEntry;
+    } catch (IOException e) {
+      return entry;
+    }
+  }
+
+  /**
+   * Encoded bodies are decoded while reading, so a small stored body may still be too big once inflated.
+   *
+   * @return the body or null if it is longer than maxLength
+   */
+  private static byte[] readAtMost(Entry entry, int maxLength) throws IOException {
+    final InputStream content = entry.getContent();
+    try {
+      final ByteArrayOutputStream result = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[Math.min(maxLength + 1, IOUtils.BUFFER_SIZE)];
+      int count;
+      while ((count = content.read(buffer)) != IOUtils.EOF) {
+        if (result.size() + count > maxLength) {
+          return null;
+        }
+        result.write(buffer, 0, count);
+      }
+      return result.toByteArray();
+    } finally {
+      IOUtils.closeQuietly(content);
+    }
+  }
+
+  private double ratio(long hits) {
+    final long total = mMemoryHits.get() + mDiskHits.get() + mMisses.get();
+    if (total == 0) {
+      return 0;
+    }
+    return (double) hits / total;
+  }
+
+  private static final class MemoryEntry implements Entry {
+
+    private final Entry mEntry;
+
+    private final byte[] mContent;
+
+    private MemoryEntry(Entry entry, byte[] content) {
+      mEntry = entry;
+      mContent = content;
+    }
+
+    @Override
+    public boolean isExpired() {
+      return mEntry.isExpired();
+    }
+
+    @Override
+    public boolean canRevalidateInBackground() {
+      return mEntry.canRevalidateInBackground();
+    }
+
+    @Override
+    public boolean canServeOnError() {
+      return mEntry.canServeOnError();
+    }
+
+    @Override
+    public InputStream getContent() {
+      return new ByteArrayInputStream(mContent);
+    }
+
+    @Override
+    public ByteBuffer map() {
+      return ByteBuffer.wrap(mContent).asReadOnlyBuffer();
+    }
+
+    @Override
+    public String getETag() {
+      return mEntry.getETag();
+    }
+
+    @Override
+    public long getLastModified() {
+      return mEntry.getLastModified();
+    }
+
+  }
+
+  private final class InvalidatingEditor implements Editor {
+
+    private final String mUrl;
+
+    private final Editor mEditor;
+
+    private InvalidatingEditor(String url, Editor editor) {
+      mUrl = url;
+      mEditor = editor;
+    }
+
+    @Override
+    public boolean acceptsEncoded() {
+      return mEditor.acceptsEncoded();
+    }
+
+    @Override
+    public OutputStream newOutputStream() throws IOException {
+      return mEditor.newOutputStream();
+    }
+
+    @Override
+    public Entry commit() throws IOException {
+      try {
+        return mEditor.commit();
+      } finally {
+        mMemory.remove(mUrl);
+      }
+    }
+
+    @Override
+    public void abort() {
+      mEditor.abort();
+    }
+
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.cache;
+
+import com.lightydev.dk.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Verifies the CRC32 and the length of a cache file once it is read to the end.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ */
+class VerifyingInputStream extends CheckedInputStream {
+
+  private final long mExpectedChecksum;
+
+  private final long mExpectedSize;
+
+  private final Runnable mOnCorrupted;
+
+  private long mSize;
+
+  VerifyingInputStream(InputStream in, long checksum, long size, Runnable onCorrupted) {
+    super(in, new CRC32());
+    mExpectedChecksum = checksum;
+    mExpectedSize = size;
+    mOnCorrupted = onCorrupted;
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int b = super.read();
+    if (b == IOUtils.EOF) {
+      verify();
+    } else {
+      ++mSize;
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int count) throws IOException {
+    final int bytes = super.read(buffer, offset, count);
+    if (bytes == IOUtils.EOF) {
+      verify();
+    } else {
+      mSize += bytes;
+    }
+    return bytes;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  private void verify() throws IOException {
+    if (mSize != mExpectedSize || getChecksum().getValue() != mExpectedChecksum) {
+      mOnCorrupted.run();
+      throw new IOException("Corrupted cache entry: size=" + mSize + "/" + mExpectedSize);
+    }
+  }
+
+}
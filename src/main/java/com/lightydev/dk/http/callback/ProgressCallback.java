@@ -0,0 +1,34 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.callback;
+
+/**
+ * Reports the progress of a body transfer. Upload progress of a streaming request body is called on
+ * the I/O thread that writes it, keep it short. Download progress of a response body is posted to
+ * the main thread and coalesced, so it may skip intermediate values.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public interface ProgressCallback {
+
+  /**
+   * @param total size in bytes or -1 if it is unknown
+   */
+  void onProgress(long current, long total);
+
+}
@@ -69,17 +69,42 @@ public class Cookie implements Comparable<Cookie> {
     return HttpCookie.domainMatches(cookieDomain, uriHost);
   }
 
+  /**
+   * Orders cookies by their RFC 6265 identity: name, domain and path.
+   */
   @Override
   public int compareTo(Cookie another) {
-    return 0;
+    int result = compareIgnoreCase(getName(), another.getName());
+    if (result == 0) {
+      result = compareIgnoreCase(getDomain(), another.getDomain());
+    }
+    if (result == 0) {
+      result = compare(getPath(), another.getPath());
+    }
+    return result;
   }
 
   public void setLastModified(long lastModified) {
     mLastModified = lastModified;
   }
 
+  /**
+   * @param time current time in milliseconds
+   */
   public boolean isExpired(long time) {
-    return mNativeCookie.hasExpired() && (mLastModified + getMaxAge()) < time;
+    return getExpiresAt() <= time;
+  }
+
+  /**
+   * @return time in milliseconds the cookie expires at, {@link Long#MAX_VALUE} for session cookies
+   * @since 2.4.0
+   */
+  public long getExpiresAt() {
+    final long maxAge = getMaxAge();
+    if (maxAge < 0) {
+      return Long.MAX_VALUE;
+    }
+    return mLastModified + maxAge * 1000;
   }
 
   public long getLastModified() {
@@ -98,10 +123,29 @@ public class Cookie implements Comparable<Cookie> {
     return mNativeCookie.getPath();
   }
 
+  void setPath(String path) {
+    mNativeCookie.setPath(path);
+  }
+
   public String getDomain() {
     return mNativeCookie.getDomain();
   }
 
+  void setDomain(String domain) {
+    mNativeCookie.setDomain(domain);
+  }
+
+  /**
+   * @since 2.4.0
+   */
+  public boolean isSecure() {
+    return mNativeCookie.getSecure();
+  }
+
+  void setSecure(boolean secure) {
+    mNativeCookie.setSecure(secure);
+  }
+
   public String getName() {
     return mNativeCookie.getName();
   }
@@ -132,4 +176,12 @@ public class Cookie implements Comparable<Cookie> {
     return getName() + "=" + getValue();
   }
 
+  private static int compareIgnoreCase(String lhs, String rhs) {
+    return (lhs == null ? "" : lhs).compareToIgnoreCase(rhs == null ? "" : rhs);
+  }
+
+  private static int compare(String lhs, String rhs) {
+    return (lhs == null ? "" : lhs).compareTo(rhs == null ? "" : rhs);
+  }
+
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.cookie;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * RFC 6265 domain and path matching.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ */
+final class CookieMatcher {
+
+  private static final Pattern IP_ADDRESS = Pattern.compile("^[0-9.]+$|^\\[?[0-9a-fA-F:]+]?$");
+
+  private static final char DOT = '.';
+
+  private static final String ROOT_PATH = "/";
+
+  private CookieMatcher() {
+  }
+
+  static String canonicalHost(String host) {
+    if (host == null) {
+      return "";
+    }
+    return host.toLowerCase(Locale.US);
+  }
+
+  static String canonicalDomain(String domain) {
+    String canonical = canonicalHost(domain);
+    while (canonical.length() > 0 && canonical.charAt(0) == DOT) {
+      canonical = canonical.substring(1);
+    }
+    return canonical;
+  }
+
+  /**
+   * @return the last two labels of the host. Every domain that domain-matches a host with two or more
+   * labels ends with the same two labels, so cookies sharded by this key are found from the request host
+   * alone, whatever public suffix the host is under.
+   */
+  static String shardKey(String host) {
+    if (IP_ADDRESS.matcher(host).matches()) {
+      return host;
+    }
+    final int last = host.lastIndexOf(DOT);
+    if (last <= 0) {
+      return host;
+    }
+    final int second = host.lastIndexOf(DOT, last - 1);
+    return second < 0 ? host : host.substring(second + 1);
+  }
+
+  /**
+   * @return true if the domain is a single label such as a top-level domain
+   */
+  static boolean isTopLevel(String domain) {
+    return domain.indexOf(DOT) < 0;
+  }
+
+  static boolean domainMatches(String domain, String host) {
+    if (host.equals(domain)) {
+      return true;
+    }
+    return !domain.isEmpty() && host.endsWith(domain)
+        && host.charAt(host.length() - domain.length() - 1) == DOT
+        && !IP_ADDRESS.matcher(host).matches();
+  }
+
+  static boolean pathMatches(String cookiePath, String requestPath) {
+    if (requestPath.equals(cookiePath)) {
+      return true;
+    }
+    if (!requestPath.startsWith(cookiePath)) {
+      return false;
+    }
+    return cookiePath.endsWith(ROOT_PATH) || requestPath.charAt(cookiePath.length()) == '/';
+  }
+
+  static String defaultPath(String requestPath) {
+    if (requestPath == null || !requestPath.startsWith(ROOT_PATH)) {
+      return ROOT_PATH;
+    }
+    final int last = requestPath.lastIndexOf('/');
+    if (last == 0) {
+      return ROOT_PATH;
+    }
+    return requestPath.substring(0, last);
+  }
+
+  static String requestPath(String path) {
+    if (path == null || path.isEmpty()) {
+      return ROOT_PATH;
+    }
+    return path;
+  }
+
+  static boolean isRootPath(String path) {
+    return ROOT_PATH.equals(path);
+  }
+
+}
@@ -31,6 +31,12 @@ public interface CookieStore {
 
   List<Cookie> get(Uri uri);
 
+  /**
+   * @return value of the Cookie request header for the uri or an empty string
+   * @since 2.4.0
+   */
+  String getCookieHeader(Uri uri);
+
   boolean remove(Uri uri, Cookie cookie);
 
   void removeAll(Uri uri);
@@ -19,19 +19,38 @@ package com.lightydev.dk.http.cookie;
 import android.net.Uri;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * Cookies are sharded into jars by the last two labels of their domain and matched with the RFC 6265 domain and
+ * path rules. Every jar keeps an immutable, sorted view per request host together with the
+ * prebuilt Cookie header, so {@link #getCookieHeader(Uri)} takes no lock and allocates nothing in
+ * the common case of root-path cookies. Expiries are kept in a time-ordered heap.
+ *
  * @author =Troy= <Daniel Serdyukov>
  */
 public class MemoryCookieStore implements CookieStore {
 
-  private final Map<String, Set<Cookie>> mCookieStore = new ConcurrentHashMap<>();
+  private static final String SEPARATOR = "; ";
+
+  private static final String HTTPS = "https";
+
+  private final ConcurrentMap<String, Jar> mJars = new ConcurrentHashMap<>();
+
+  private final PriorityQueue<StoredCookie> mExpiryQueue = new PriorityQueue<>(16, new Comparator<StoredCookie>() {
+    @Override
+    public int compare(StoredCookie lhs, StoredCookie rhs) {
+      return lhs.mExpiresAt < rhs.mExpiresAt ? -1 : (lhs.mExpiresAt == rhs.mExpiresAt ? 0 : 1);
+    }
+  });
 
   private final CookiePolicy mPolicy;
 
@@ -45,11 +64,12 @@ public class MemoryCookieStore implements CookieStore {
 
   @Override
   public void add(Uri uri, List<Cookie> cookies) {
-    final Set<Cookie> cookieJar = obtainCookieJar(uri.getHost());
+    final String host = CookieMatcher.canonicalHost(uri.getHost());
+    final long now = System.currentTimeMillis();
     for (final Cookie cookie : cookies) {
       if (mPolicy.shouldAccept(uri, cookie)) {
-        cookie.setLastModified(System.currentTimeMillis());
-        cookieJar.add(cookie);
+        cookie.setLastModified(now);
+        add(uri, host, cookie, now);
       }
     }
     removeExpired();
@@ -57,44 +77,357 @@ public class MemoryCookieStore implements CookieStore {
 
   @Override
   public List<Cookie> get(Uri uri) {
-    return new ArrayList<>(obtainCookieJar(uri.getHost()));
+    final View view = getView(uri);
+    final String path = CookieMatcher.requestPath(uri.getPath());
+    if (view.mCookies.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final List<Cookie> cookies = new ArrayList<>(view.mCookies.size());
+    for (final StoredCookie cookie : view.mCookies) {
+      if (cookie.matches(path, HTTPS.equalsIgnoreCase(uri.getScheme()))) {
+        cookies.add(cookie.mCookie);
+      }
+    }
+    return cookies;
+  }
+
+  /**
+   * @since 2.4.0
+   */
+  @Override
+  public String getCookieHeader(Uri uri) {
+    final View view = getView(uri);
+    if (view.mHeader != null) {
+      return view.mHeader;
+    }
+    final String path = CookieMatcher.requestPath(uri.getPath());
+    final boolean secure = HTTPS.equalsIgnoreCase(uri.getScheme());
+    final StringBuilder header = new StringBuilder();
+    for (final StoredCookie cookie : view.mCookies) {
+      if (cookie.matches(path, secure)) {
+        if (header.length() > 0) {
+          header.append(SEPARATOR);
+        }
+        header.append(cookie.mCookie);
+      }
+    }
+    return header.toString();
   }
 
   @Override
   public boolean remove(Uri uri, Cookie cookie) {
-    return obtainCookieJar(uri.getHost()).remove(cookie);
+    return !evict(uri, cookie).isEmpty();
   }
 
   @Override
   public void removeAll(Uri uri) {
-    mCookieStore.remove(uri.getHost());
+    evictAll(uri);
   }
 
   @Override
   public void removeAll() {
-    mCookieStore.clear();
+    mJars.clear();
+    synchronized (mExpiryQueue) {
+      mExpiryQueue.clear();
+    }
   }
 
   @Override
   public void removeExpired() {
     final long now = System.currentTimeMillis();
-    for (final Set<Cookie> cookieJar : mCookieStore.values()) {
-      final Iterator<Cookie> cookieIterator = cookieJar.iterator();
-      while (cookieIterator.hasNext()) {
-        if (cookieIterator.next().isExpired(now)) {
-          cookieIterator.remove();
+    final List<StoredCookie> expired = new ArrayList<>();
+    synchronized (mExpiryQueue) {
+      while (!mExpiryQueue.isEmpty() && mExpiryQueue.peek().mExpiresAt <= now) {
+        expired.add(mExpiryQueue.poll());
+      }
+    }
+    for (final StoredCookie cookie : expired) {
+      final Jar jar = mJars.get(cookie.mJarKey);
+      if (jar != null) {
+        jar.removeStored(cookie);
+      }
+    }
+  }
+
+  /**
+   * Adds a cookie the caller's policy accepted. The domain and path of the cookie are set to the
+   * ones it is stored with.
+   *
+   * @return false if the cookie was rejected for its domain
+   */
+  boolean store(Uri uri, Cookie cookie, long now) {
+    return add(uri, CookieMatcher.canonicalHost(uri.getHost()), cookie, now);
+  }
+
+  /**
+   * Adds a cookie loaded from persistent storage, keeping its domain, path and last modified time.
+   */
+  void restore(Cookie cookie, boolean hostOnly) {
+    final String domain = cookie.getDomain();
+    if (hostOnly) {
+      cookie.setDomain(null);
+    }
+    add(Uri.EMPTY, CookieMatcher.canonicalHost(domain), cookie, System.currentTimeMillis());
+  }
+
+  /**
+   * @return the removed cookies
+   */
+  List<Cookie> evict(Uri uri, Cookie cookie) {
+    final String host = CookieMatcher.canonicalHost(uri.getHost());
+    final Jar jar = mJars.get(CookieMatcher.shardKey(host));
+    if (jar == null) {
+      return Collections.emptyList();
+    }
+    if (cookie.getDomain() == null) {
+      cookie.setDomain(host);
+    }
+    return dequeue(jar.remove(cookie));
+  }
+
+  /**
+   * @return the removed cookies
+   */
+  List<Cookie> evictAll(Uri uri) {
+    final String host = CookieMatcher.canonicalHost(uri.getHost());
+    final Jar jar = mJars.get(CookieMatcher.shardKey(host));
+    if (jar == null) {
+      return Collections.emptyList();
+    }
+    return dequeue(jar.removeAll(host));
+  }
+
+  private boolean add(Uri uri, String host, Cookie cookie, long now) {
+    final String domain = CookieMatcher.canonicalDomain(cookie.getDomain());
+    final boolean hostOnly = domain.isEmpty();
+    if (!hostOnly && !acceptsDomain(domain, host)) {
+      return false;
+    }
+    cookie.setDomain(hostOnly ? host : domain);
+    if (cookie.getPath() == null || !cookie.getPath().startsWith("/")) {
+      cookie.setPath(CookieMatcher.defaultPath(uri.getPath()));
+    }
+    final String jarKey = CookieMatcher.shardKey(cookie.getDomain());
+    final StoredCookie stored = new StoredCookie(cookie, jarKey, hostOnly);
+    final Jar jar = obtainJar(jarKey);
+    if (cookie.isExpired(now)) {
+      dequeue(jar.remove(cookie));
+    } else {
+      final StoredCookie replaced = jar.put(stored);
+      synchronized (mExpiryQueue) {
+        if (replaced != null && replaced.mExpiresAt != Long.MAX_VALUE) {
+          mExpiryQueue.remove(replaced);
+        }
+        if (stored.mExpiresAt != Long.MAX_VALUE) {
+          mExpiryQueue.offer(stored);
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Drops removed cookies from the expiry heap, so replaced and deleted cookies don't pile up there.
+   */
+  private List<Cookie> dequeue(List<StoredCookie> removed) {
+    if (removed.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final List<Cookie> cookies = new ArrayList<>(removed.size());
+    synchronized (mExpiryQueue) {
+      for (final StoredCookie cookie : removed) {
+        if (cookie.mExpiresAt != Long.MAX_VALUE) {
+          mExpiryQueue.remove(cookie);
+        }
+        cookies.add(cookie.mCookie);
+      }
+    }
+    return cookies;
+  }
+
+  /**
+   * Rejects cookies for a single label domain other than the host itself, e.g. Domain=com.
+   */
+  private static boolean acceptsDomain(String domain, String host) {
+    if (domain.equals(host)) {
+      return true;
+    }
+    return !CookieMatcher.isTopLevel(domain) && CookieMatcher.domainMatches(domain, host);
+  }
+
+  private View getView(Uri uri) {
+    final String host = CookieMatcher.canonicalHost(uri.getHost());
+    final Jar jar = mJars.get(CookieMatcher.shardKey(host));
+    if (jar == null) {
+      return View.EMPTY;
+    }
+    return jar.getView(host, System.currentTimeMillis());
+  }
+
+  private Jar obtainJar(String jarKey) {
+    Jar jar = mJars.get(jarKey);
+    if (jar == null) {
+      final Jar newJar = new Jar();
+      jar = mJars.putIfAbsent(jarKey, newJar);
+      if (jar == null) {
+        jar = newJar;
+      }
+    }
+    return jar;
+  }
+
+  private static final class StoredCookie {
+
+    private final Cookie mCookie;
+
+    private final String mJarKey;
+
+    private final String mDomain;
+
+    private final String mPath;
+
+    private final boolean mHostOnly;
+
+    private final long mExpiresAt;
+
+    private StoredCookie(Cookie cookie, String jarKey, boolean hostOnly) {
+      mCookie = cookie;
+      mJarKey = jarKey;
+      mDomain = cookie.getDomain();
+      mPath = cookie.getPath();
+      mHostOnly = hostOnly;
+      mExpiresAt = cookie.getExpiresAt();
+    }
+
+    private boolean isSentTo(String host) {
+      return mHostOnly ? mDomain.equals(host) : CookieMatcher.domainMatches(mDomain, host);
+    }
+
+    private boolean matches(String path, boolean secure) {
+      return (secure || !mCookie.isSecure()) && CookieMatcher.pathMatches(mPath, path);
+    }
+
+  }
+
+  /**
+   * Cookies sent to one host, longest paths first.
+   */
+  private static final class View {
+
+    private static final View EMPTY = new View(Collections.<StoredCookie>emptyList(), Long.MAX_VALUE);
+
+    private final List<StoredCookie> mCookies;
+
+    private final long mExpiresAt;
+
+    private final String mHeader;
+
+    private View(List<StoredCookie> cookies, long expiresAt) {
+      mCookies = cookies;
+      mExpiresAt = expiresAt;
+      mHeader = buildHeader(cookies);
+    }
+
+    private static String buildHeader(List<StoredCookie> cookies) {
+      final StringBuilder header = new StringBuilder();
+      for (final StoredCookie cookie : cookies) {
+        if (cookie.mCookie.isSecure() || !CookieMatcher.isRootPath(cookie.mPath)) {
+          return null;
         }
+        if (header.length() > 0) {
+          header.append(SEPARATOR);
+        }
+        header.append(cookie.mCookie);
       }
+      return header.toString();
     }
+
   }
 
-  private Set<Cookie> obtainCookieJar(String host) {
-    Set<Cookie> cookieJar = mCookieStore.get(host);
-    if (cookieJar == null) {
-      cookieJar = new ConcurrentSkipListSet<>();
-      mCookieStore.put(host, cookieJar);
+  private static final class Jar {
+
+    private static final Comparator<StoredCookie> BY_PATH_LENGTH = new Comparator<StoredCookie>() {
+      @Override
+      public int compare(StoredCookie lhs, StoredCookie rhs) {
+        return rhs.mPath.length() - lhs.mPath.length();
+      }
+    };
+
+    private final Map<Cookie, StoredCookie> mCookies = new HashMap<>();
+
+    private final ConcurrentMap<String, View> mViews = new ConcurrentHashMap<>();
+
+    private View getView(String host, long now) {
+      final View view = mViews.get(host);
+      if (view != null && view.mExpiresAt > now) {
+        return view;
+      }
+      return buildView(host, now);
+    }
+
+    private synchronized View buildView(String host, long now) {
+      final List<StoredCookie> cookies = new ArrayList<>();
+      long expiresAt = Long.MAX_VALUE;
+      for (final StoredCookie cookie : mCookies.values()) {
+        if (cookie.mExpiresAt > now && cookie.isSentTo(host)) {
+          cookies.add(cookie);
+          expiresAt = Math.min(expiresAt, cookie.mExpiresAt);
+        }
+      }
+      Collections.sort(cookies, BY_PATH_LENGTH);
+      final View view = new View(Collections.unmodifiableList(cookies), expiresAt);
+      mViews.put(host, view);
+      return view;
+    }
+
+    /**
+     * @return the cookie this one replaces or null
+     */
+    private synchronized StoredCookie put(StoredCookie cookie) {
+      mViews.clear();
+      return mCookies.put(cookie.mCookie, cookie);
     }
-    return cookieJar;
+
+    private synchronized List<StoredCookie> remove(Cookie cookie) {
+      mViews.clear();
+      if (cookie.getPath() != null) {
+        final StoredCookie removed = mCookies.remove(cookie);
+        return removed == null ? Collections.<StoredCookie>emptyList() : Collections.singletonList(removed);
+      }
+      final List<StoredCookie> removed = new ArrayList<>();
+      final Iterator<StoredCookie> iterator = mCookies.values().iterator();
+      while (iterator.hasNext()) {
+        final StoredCookie stored = iterator.next();
+        if (stored.mCookie.getName().equalsIgnoreCase(cookie.getName())
+            && stored.mDomain.equalsIgnoreCase(cookie.getDomain())) {
+          iterator.remove();
+          removed.add(stored);
+        }
+      }
+      return removed;
+    }
+
+    private synchronized void removeStored(StoredCookie cookie) {
+      if (mCookies.get(cookie.mCookie) == cookie) {
+        mCookies.remove(cookie.mCookie);
+        mViews.clear();
+      }
+    }
+
+    private synchronized List<StoredCookie> removeAll(String host) {
+      final List<StoredCookie> removed = new ArrayList<>();
+      final Iterator<StoredCookie> iterator = mCookies.values().iterator();
+      while (iterator.hasNext()) {
+        final StoredCookie stored = iterator.next();
+        if (stored.isSentTo(host)) {
+          iterator.remove();
+          removed.add(stored);
+        }
+      }
+      mViews.clear();
+      return removed;
+    }
+
   }
 
 }
@@ -20,6 +20,7 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.provider.BaseColumns;
+import android.text.TextUtils;
 
 import com.lightydev.dk.sqlite.SQLiteColumn;
 import com.lightydev.dk.sqlite.SQLiteTable;
@@ -30,6 +31,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * Rows are keyed by domain, path and name like cookies are. Since 2.4.0 the table keeps the domain,
+ * path and secure attributes; a table created by an older version is dropped and recreated when the
+ * database is opened, whether or not the schema version was bumped.
+ *
  * @author =Troy= <Daniel Serdyukov>
  */
 public class SQLiteCookie extends SQLiteTable {
@@ -42,10 +47,22 @@ public class SQLiteCookie extends SQLiteTable {
   }
 
   public static ContentValues toContentValues(String host, Cookie cookie) {
+    return toContentValues(host, cookie, TextUtils.isEmpty(cookie.getDomain()));
+  }
+
+  /**
+   * @param hostOnly true if the cookie came without a Domain attribute and is sent to its host only
+   * @since 2.4.0
+   */
+  public static ContentValues toContentValues(String host, Cookie cookie, boolean hostOnly) {
     final ContentValues values = new ContentValues();
     values.put(Columns.NAME, cookie.getName());
     values.put(Columns.VALUE, cookie.getValue());
     values.put(Columns.HOST, host);
+    values.put(Columns.DOMAIN, hostOnly ? host : cookie.getDomain());
+    values.put(Columns.PATH, cookie.getPath());
+    values.put(Columns.SECURE, cookie.isSecure() ? 1 : 0);
+    values.put(Columns.HOST_ONLY, hostOnly ? 1 : 0);
     values.put(Columns.LAST_MODIFIED, cookie.getLastModified());
     values.put(Columns.MAX_AGE, cookie.getMaxAge());
     return values;
@@ -54,17 +71,34 @@ public class SQLiteCookie extends SQLiteTable {
   public static List<Cookie> toCookieJar(Cursor c) {
     final List<Cookie> cookies = new ArrayList<>(c.getCount());
     do {
-      final Cookie cookie = new Cookie(
-          c.getString(c.getColumnIndex(Columns.NAME)),
-          c.getString(c.getColumnIndex(Columns.VALUE))
-      );
-      cookie.setLastModified(c.getLong(c.getColumnIndex(Columns.LAST_MODIFIED)));
-      cookie.setLastModified(c.getLong(c.getColumnIndex(Columns.MAX_AGE)));
-      cookies.add(cookie);
+      cookies.add(toCookie(c));
     } while (c.moveToNext());
     return cookies;
   }
 
+  /**
+   * @since 2.4.0
+   */
+  public static Cookie toCookie(Cursor c) {
+    final Cookie cookie = new Cookie(
+        c.getString(c.getColumnIndex(Columns.NAME)),
+        c.getString(c.getColumnIndex(Columns.VALUE))
+    );
+    cookie.setDomain(c.getString(c.getColumnIndex(Columns.DOMAIN)));
+    cookie.setPath(c.getString(c.getColumnIndex(Columns.PATH)));
+    cookie.setSecure(c.getInt(c.getColumnIndex(Columns.SECURE)) != 0);
+    cookie.setLastModified(c.getLong(c.getColumnIndex(Columns.LAST_MODIFIED)));
+    cookie.setMaxAge(c.getLong(c.getColumnIndex(Columns.MAX_AGE)));
+    return cookie;
+  }
+
+  /**
+   * @since 2.4.0
+   */
+  public static boolean isHostOnly(Cursor c) {
+    return c.getInt(c.getColumnIndex(Columns.HOST_ONLY)) != 0;
+  }
+
   @Override
   public String getTableName() {
     return mTableName;
@@ -76,16 +110,47 @@ public class SQLiteCookie extends SQLiteTable {
         .addColumn(new SQLiteColumn(Columns.NAME))
         .addColumn(new SQLiteColumn(Columns.VALUE))
         .addColumn(new SQLiteColumn(Columns.HOST))
+        .addColumn(new SQLiteColumn(Columns.DOMAIN))
+        .addColumn(new SQLiteColumn(Columns.PATH))
+        .addColumn(new SQLiteColumn(Columns.SECURE).integer())
+        .addColumn(new SQLiteColumn(Columns.HOST_ONLY).integer())
         .addColumn(new SQLiteColumn(Columns.LAST_MODIFIED).integer())
         .addColumn(new SQLiteColumn(Columns.MAX_AGE).integer())
-        .addUniqueKey(new SQLiteUniqueKey(Columns.HOST, Columns.NAME).onConflict().replace())
+        .addUniqueKey(new SQLiteUniqueKey(Columns.DOMAIN, Columns.PATH, Columns.NAME).onConflict().replace())
         .create(db);
   }
 
+  @Override
+  protected void onOpen(SQLiteDatabase db) {
+    if (!hasColumn(db, Columns.DOMAIN)) {
+      db.execSQL("DROP TABLE IF EXISTS " + mTableName + ";");
+      onCreate(db);
+    }
+  }
+
+  private boolean hasColumn(SQLiteDatabase db, String column) {
+    final Cursor c = db.rawQuery("PRAGMA table_info(" + mTableName + ");", null);
+    try {
+      final int nameIndex = c.getColumnIndex("name");
+      while (c.moveToNext()) {
+        if (TextUtils.equals(column, c.getString(nameIndex))) {
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      c.close();
+    }
+  }
+
   public interface Columns extends BaseColumns {
     String NAME = "name";
     String VALUE = "value";
     String HOST = "host";
+    String DOMAIN = "domain";
+    String PATH = "path";
+    String SECURE = "secure";
+    String HOST_ONLY = "host_only";
     String LAST_MODIFIED = "last_modified";
     String MAX_AGE = "max_age";
   }
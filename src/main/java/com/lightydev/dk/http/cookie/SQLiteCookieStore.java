@@ -16,19 +16,53 @@
 
 package com.lightydev.dk.http.cookie;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
-import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
 
+import com.lightydev.dk.log.Logger;
+import com.lightydev.dk.os.BackgroundThread;
+
+import java.io.Flushable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * Reads are served from an in-memory mirror that is loaded from the provider once. Writes update
+ * the mirror right away and are applied to the provider in batched transactions on the background
+ * thread. {@link #flush()} applies the pending writes at once, the engine calls it when it stops.
+ *
  * @author =Troy= <Daniel Serdyukov>
  */
-public class SQLiteCookieStore implements CookieStore {
+public class SQLiteCookieStore implements CookieStore, Flushable {
+
+  private static final long FLUSH_DELAY = 1000;
+
+  private final MemoryCookieStore mMirror = new MemoryCookieStore();
+
+  private final ArrayList<ContentProviderOperation> mPending = new ArrayList<>();
+
+  private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+
+  private final Object mFlushLock = new Object();
+
+  private final Runnable mFlushCmd = new Runnable() {
+    @Override
+    public void run() {
+      mFlushScheduled.set(false);
+      try {
+        flush();
+      } catch (IOException e) {
+        Logger.quiet("%s", e);
+      }
+    }
+  };
 
   private final ContentResolver mDb;
 
@@ -36,6 +70,8 @@ public class SQLiteCookieStore implements CookieStore {
 
   private final Uri mUri;
 
+  private volatile boolean mLoaded;
+
   public SQLiteCookieStore(ContentResolver db, Uri uri) {
     this(db, CookiePolicy.ACCEPT_ALL, uri);
   }
@@ -48,59 +84,154 @@ public class SQLiteCookieStore implements CookieStore {
 
   @Override
   public void add(Uri uri, List<Cookie> cookies) {
-    final String host = uri.getHost();
+    ensureLoaded();
+    final String host = CookieMatcher.canonicalHost(uri.getHost());
     final long now = System.currentTimeMillis();
-    final List<ContentValues> bulkValues = new ArrayList<>(cookies.size());
+    final List<ContentProviderOperation> operations = new ArrayList<>(cookies.size());
     for (final Cookie cookie : cookies) {
       if (mPolicy.shouldAccept(uri, cookie)) {
         cookie.setLastModified(now);
-        bulkValues.add(SQLiteCookie.toContentValues(host, cookie));
+        final boolean hostOnly = CookieMatcher.canonicalDomain(cookie.getDomain()).isEmpty();
+        if (!mMirror.store(uri, cookie, now)) {
+          continue;
+        }
+        if (cookie.isExpired(now)) {
+          operations.add(newDelete(cookie));
+        } else {
+          operations.add(ContentProviderOperation.newInsert(mUri)
+              .withValues(SQLiteCookie.toContentValues(host, cookie, hostOnly))
+              .build());
+        }
       }
     }
-    mDb.bulkInsert(mUri, bulkValues.toArray(new ContentValues[bulkValues.size()]));
+    mMirror.removeExpired();
+    enqueue(operations);
   }
 
   @Override
   public List<Cookie> get(Uri uri) {
-    final Cursor c = mDb.query(
-        mUri, null, SQLiteCookie.Columns.HOST + "=?",
-        new String[]{uri.getHost()}, null
-    );
-    try {
-      if (c.moveToFirst()) {
-        return SQLiteCookie.toCookieJar(c);
-      }
-    } finally {
-      c.close();
-    }
-    return Collections.emptyList();
+    ensureLoaded();
+    return mMirror.get(uri);
+  }
+
+  /**
+   * @since 2.4.0
+   */
+  @Override
+  public String getCookieHeader(Uri uri) {
+    ensureLoaded();
+    return mMirror.getCookieHeader(uri);
   }
 
   @Override
   public boolean remove(Uri uri, Cookie cookie) {
-    return mDb.delete(
-        mUri, SQLiteCookie.Columns.HOST + "=? AND " + SQLiteCookie.Columns.NAME + "=?",
-        new String[]{uri.getHost(), cookie.getName()}
-    ) > 0;
+    ensureLoaded();
+    final List<Cookie> removed = mMirror.evict(uri, cookie);
+    enqueue(newDeletes(removed));
+    return !removed.isEmpty();
   }
 
   @Override
   public void removeAll(Uri uri) {
-    mDb.delete(mUri, SQLiteCookie.Columns.HOST + "=?", new String[]{uri.getHost()});
+    ensureLoaded();
+    enqueue(newDeletes(mMirror.evictAll(uri)));
   }
 
   @Override
   public void removeAll() {
-    mDb.delete(mUri, null, null);
+    ensureLoaded();
+    mMirror.removeAll();
+    synchronized (mPending) {
+      mPending.clear();
+    }
+    enqueue(Collections.singletonList(ContentProviderOperation.newDelete(mUri).build()));
   }
 
   @Override
   public void removeExpired() {
-    mDb.delete(
-        mUri, SQLiteCookie.Columns.MAX_AGE + " <> -1" +
-        " AND (" + SQLiteCookie.Columns.LAST_MODIFIED + " + " + SQLiteCookie.Columns.MAX_AGE + ") < ?",
-        new String[]{String.valueOf(System.currentTimeMillis())}
-    );
+    ensureLoaded();
+    mMirror.removeExpired();
+    enqueue(Collections.singletonList(ContentProviderOperation.newDelete(mUri)
+        .withSelection(SQLiteCookie.Columns.MAX_AGE + " <> -1 AND (" + SQLiteCookie.Columns.LAST_MODIFIED
+            + " + " + SQLiteCookie.Columns.MAX_AGE + " * 1000) < ?",
+            new String[]{String.valueOf(System.currentTimeMillis())})
+        .build()));
+  }
+
+  /**
+   * Applies the pending writes in one transaction on the calling thread.
+   *
+   * @since 2.4.0
+   */
+  @Override
+  public void flush() throws IOException {
+    synchronized (mFlushLock) {
+      final ArrayList<ContentProviderOperation> operations;
+      synchronized (mPending) {
+        if (mPending.isEmpty()) {
+          return;
+        }
+        operations = new ArrayList<>(mPending);
+        mPending.clear();
+      }
+      try {
+        mDb.applyBatch(mUri.getAuthority(), operations);
+      } catch (RemoteException | OperationApplicationException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
+  private void ensureLoaded() {
+    if (!mLoaded) {
+      synchronized (this) {
+        if (!mLoaded) {
+          load();
+          mLoaded = true;
+        }
+      }
+    }
+  }
+
+  private void load() {
+    final Cursor c = mDb.query(mUri, null, null, null, null);
+    try {
+      while (c.moveToNext()) {
+        mMirror.restore(SQLiteCookie.toCookie(c), SQLiteCookie.isHostOnly(c));
+      }
+    } finally {
+      c.close();
+    }
+  }
+
+  private List<ContentProviderOperation> newDeletes(List<Cookie> cookies) {
+    final List<ContentProviderOperation> operations = new ArrayList<>(cookies.size());
+    for (final Cookie cookie : cookies) {
+      operations.add(newDelete(cookie));
+    }
+    return operations;
+  }
+
+  /**
+   * The cookie must carry the domain and path it is stored with.
+   */
+  private ContentProviderOperation newDelete(Cookie cookie) {
+    return ContentProviderOperation.newDelete(mUri)
+        .withSelection(SQLiteCookie.Columns.DOMAIN + "=? AND " + SQLiteCookie.Columns.PATH + "=? AND "
+            + SQLiteCookie.Columns.NAME + "=?", new String[]{cookie.getDomain(), cookie.getPath(), cookie.getName()})
+        .build();
+  }
+
+  private void enqueue(List<ContentProviderOperation> operations) {
+    if (operations.isEmpty()) {
+      return;
+    }
+    synchronized (mPending) {
+      mPending.addAll(operations);
+    }
+    if (mFlushScheduled.compareAndSet(false, true)) {
+      BackgroundThread.getHandler().postDelayed(mFlushCmd, FLUSH_DELAY);
+    }
   }
 
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.pool;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * @author =Troy= <Daniel Serdyukov>
+ */
+public interface ConnectionPool {
+
+  ConnectionPool NO_POOL = new NoConnectionPool();
+
+  ConnectionPool KEEP_ALIVE = new KeepAliveConnectionPool();
+
+  HttpURLConnection open(URL url) throws IOException;
+
+  /**
+   * @param reusable false if the server asked to close the connection or the response was not read
+   */
+  void release(HttpURLConnection cn, boolean reusable);
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.http.pool;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Leaves sockets to the platform {@link HttpURLConnection} keep-alive pool, which owns and evicts
+ * them. A released connection is disconnected only when it must not be reused, everything else is
+ * kept alive by the platform. Its limits are process wide and tuned with {@link #configure(int, long)}.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ */
+public class KeepAliveConnectionPool implements ConnectionPool {
+
+  /**
+   * Sets the {@code http.keepAlive}, {@code http.maxConnections} and {@code http.keepAliveDuration}
+   * system properties. The platform reads them once, call it before the first request is sent.
+   *
+   * @param maxIdle         idle connections the platform keeps across all hosts
+   * @param keepAliveMillis time an idle connection is kept
+   * @since 2.4.0
+   */
+  public static void configure(int maxIdle, long keepAliveMillis) {
+    System.setProperty("http.keepAlive", "true");
+    System.setProperty("http.maxConnections", String.valueOf(maxIdle));
+    System.setProperty("http.keepAliveDuration", String.valueOf(keepAliveMillis));
+  }
+
+  @Override
+  public HttpURLConnection open(URL url) throws IOException {
+    return (HttpURLConnection) url.openConnection();
+  }
+
+  @Override
+  public void release(HttpURLConnection cn, boolean reusable) {
+    if (!reusable) {
+      cn.disconnect();
+    }
+  }
+
+}
@@ -18,6 +18,7 @@ package com.lightydev.dk.io;
 
 import com.lightydev.dk.log.Logger;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -25,6 +26,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.nio.charset.Charset;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * @author =Troy= <Daniel Serdyukov>
@@ -85,6 +87,26 @@ public final class IOUtils {
     return totalBytes;
   }
 
+  public static byte[] toByteArray(InputStream is) throws IOException {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    copy(is, result);
+    return result.toByteArray();
+  }
+
+  /**
+   * @since 2.4.0
+   */
+  public static byte[] gzip(byte[] data) throws IOException {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream(data.length / 2);
+    final GZIPOutputStream gzip = new GZIPOutputStream(result);
+    try {
+      gzip.write(data);
+    } finally {
+      closeQuietly(gzip);
+    }
+    return result.toByteArray();
+  }
+
   public static int copyQuietly(InputStream source, OutputStream destination) {
     try {
       return copy(source, destination);
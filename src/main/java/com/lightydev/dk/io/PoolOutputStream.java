@@ -32,8 +32,11 @@ public class PoolOutputStream extends BufferedOutputStream {
 
   @Override
   public void close() throws IOException {
-    ByteArrayPool.getInstance().free(buf);
-    super.close();
+    try {
+      super.close();
+    } finally {
+      ByteArrayPool.getInstance().free(buf);
+    }
   }
 
 }
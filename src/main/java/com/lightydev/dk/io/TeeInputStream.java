@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.io;
+
+import com.lightydev.dk.log.Logger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies every byte read from the source into a branch stream. Closing the stream drains the rest
+ * of the source into the branch, so the branch receives the complete content even if the reader
+ * stops early. A failed branch write or close never breaks the reader, it is reported by
+ * {@link #isComplete()}.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ */
+public class TeeInputStream extends FilterInputStream {
+
+  private final OutputStream mBranch;
+
+  private boolean mBranchFailed;
+
+  private boolean mEof;
+
+  private boolean mClosed;
+
+  public TeeInputStream(InputStream in, OutputStream branch) {
+    super(in);
+    mBranch = branch;
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int b = super.read();
+    if (b == IOUtils.EOF) {
+      mEof = true;
+    } else if (!mBranchFailed) {
+      try {
+        mBranch.write(b);
+      } catch (IOException e) {
+        mBranchFailed = true;
+      }
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int count) throws IOException {
+    final int bytes = super.read(buffer, offset, count);
+    if (bytes == IOUtils.EOF) {
+      mEof = true;
+    } else if (!mBranchFailed) {
+      try {
+        mBranch.write(buffer, offset, bytes);
+      } catch (IOException e) {
+        mBranchFailed = true;
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public long skip(long byteCount) throws IOException {
+    final byte[] buffer = ByteArrayPool.getInstance().obtain();
+    try {
+      long skipped = 0;
+      while (skipped < byteCount) {
+        final int bytes = read(buffer, 0, (int) Math.min(buffer.length, byteCount - skipped));
+        if (bytes == IOUtils.EOF) {
+          break;
+        }
+        skipped += bytes;
+      }
+      return skipped;
+    } finally {
+      ByteArrayPool.getInstance().free(buffer);
+    }
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readLimit) {
+  }
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (mClosed) {
+      return;
+    }
+    mClosed = true;
+    try {
+      drain();
+    } finally {
+      closeBranch();
+      super.close();
+    }
+  }
+
+  public boolean isComplete() {
+    return mEof && !mBranchFailed;
+  }
+
+  /**
+   * The branch may buffer, a failed close means the last bytes never reached it.
+   */
+  private void closeBranch() {
+    try {
+      mBranch.close();
+    } catch (IOException e) {
+      mBranchFailed = true;
+      Logger.quiet("%s", e);
+    }
+  }
+
+  private void drain() {
+    if (mBranchFailed || mEof) {
+      return;
+    }
+    final byte[] buffer = ByteArrayPool.getInstance().obtain();
+    try {
+      int bytes;
+      do {
+        bytes = read(buffer, 0, buffer.length);
+      } while (bytes != IOUtils.EOF && !mBranchFailed);
+    } catch (IOException e) {
+      Logger.quiet("%s", e);
+    } finally {
+      ByteArrayPool.getInstance().free(buffer);
+    }
+  }
+
+}
@@ -26,7 +26,6 @@ import android.os.Build;
 import com.lightydev.dk.http.AsyncHttpEntry;
 import com.lightydev.dk.http.HttpException;
 import com.lightydev.dk.http.callback.AsyncHttpCallback;
-import com.lightydev.dk.log.Logger;
 
 import java.io.InputStream;
 import java.util.Map;
@@ -41,8 +40,6 @@ public abstract class HttpCursorLoader extends CursorLoader {
 
   private final AtomicBoolean mFirstLoad = new AtomicBoolean(true);
 
-  private final Object mWaitLock = new Object();
-
   private final AtomicReference<AsyncHttpEntry> mHttpRequest = new AtomicReference<>();
 
   private final AsyncHttpCallback mHttpCallback = new AsyncHttpCallbackImpl();
@@ -58,27 +55,18 @@ public abstract class HttpCursorLoader extends CursorLoader {
 
   @Override
   public Cursor loadInBackground() {
-    if (mFirstLoad.compareAndSet(true, false) && waitForRequest()) {
-      synchronized (mWaitLock) {
-        try {
-          mWaitLock.wait();
-        } catch (InterruptedException e) {
-          Logger.error(e);
-        }
+    if (mFirstLoad.compareAndSet(true, false)) {
+      final AsyncHttpEntry request = newRequest().setCallback(mHttpCallback);
+      mHttpRequest.set(request);
+      if (waitForRequest()) {
+        request.execute();
+      } else {
+        request.send();
       }
     }
     return super.loadInBackground();
   }
 
-  @Override
-  protected void onForceLoad() {
-    if (mFirstLoad.get()) {
-      mHttpRequest.set(newRequest().setCallback(mHttpCallback));
-      mHttpRequest.get().send();
-    }
-    super.onForceLoad();
-  }
-
   @Override
   protected void onReset() {
     cancelHttpRequest();
@@ -96,15 +84,9 @@ public abstract class HttpCursorLoader extends CursorLoader {
   protected abstract void onAsyncError(HttpException e);
 
   private void cancelHttpRequest() {
-    try {
-      if (mHttpRequest.get() != null) {
-        mHttpRequest.get().cancel();
-      }
-      mHttpRequest.set(null);
-    } finally {
-      synchronized (mWaitLock) {
-        mWaitLock.notifyAll();
-      }
+    final AsyncHttpEntry request = mHttpRequest.getAndSet(null);
+    if (request != null) {
+      request.cancel();
     }
   }
 
@@ -112,24 +94,12 @@ public abstract class HttpCursorLoader extends CursorLoader {
 
     @Override
     public void onSuccess(int statusCode, Map<String, String> headers, InputStream content) {
-      try {
-        onAsyncSuccess(statusCode, headers, content);
-      } finally {
-        synchronized (mWaitLock) {
-          mWaitLock.notifyAll();
-        }
-      }
+      onAsyncSuccess(statusCode, headers, content);
     }
 
     @Override
     public void onError(HttpException e) {
-      try {
-        onAsyncError(e);
-      } finally {
-        synchronized (mWaitLock) {
-          mWaitLock.notifyAll();
-        }
-      }
+      onAsyncError(e);
     }
 
   }
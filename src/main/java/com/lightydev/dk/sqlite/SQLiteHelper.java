@@ -54,4 +54,18 @@ class SQLiteHelper extends SQLiteOpenHelper {
     }
   }
 
+  @Override
+  public void onOpen(SQLiteDatabase db) {
+    if (db.isReadOnly()) {
+      return;
+    }
+    SQLiteDatabaseCompat.beginTransactionNonExclusive(db);
+    try {
+      mSchema.onOpen(db);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
 }
@@ -64,6 +64,12 @@ public class SQLiteSchema {
     }
   }
 
+  void onOpen(SQLiteDatabase db) {
+    for (final SQLiteTable table : mSchema.values()) {
+      table.onOpen(db);
+    }
+  }
+
   SQLiteTable acquireTable(Uri uri) {
     final String tableName = uri.getPathSegments().get(0);
     final SQLiteTable table = mSchema.get(tableName);
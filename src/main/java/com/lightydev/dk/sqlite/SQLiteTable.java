@@ -92,4 +92,13 @@ public abstract class SQLiteTable {
     onCreate(db);
   }
 
+  /**
+   * Called every time the database is opened writable, after create or upgrade.
+   *
+   * @since 2.4.0
+   */
+  protected void onOpen(SQLiteDatabase db) {
+
+  }
+
 }
@@ -16,6 +16,8 @@
 
 package com.lightydev.dk.util;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
@@ -44,6 +46,21 @@ public class Observable<T> {
     mObservers.clear();
   }
 
+  /**
+   * @since 2.4.0
+   */
+  public boolean hasObservers() {
+    return !mObservers.isEmpty();
+  }
+
+  /**
+   * @return snapshot of the registered observers
+   * @since 2.4.0
+   */
+  public List<Observer<T>> getObservers() {
+    return new ArrayList<>(mObservers);
+  }
+
   public void notifyObservers(T data) {
     for (final Observer<T> observer : mObservers) {
       observer.onChange(this, data);
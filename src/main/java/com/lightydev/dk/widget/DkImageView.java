@@ -26,9 +26,12 @@ import android.util.DisplayMetrics;
 import android.widget.ImageView;
 
 import com.lightydev.dk.R;
+import com.lightydev.dk.content.BitmapPool;
 import com.lightydev.dk.content.ImageLoader;
+import com.lightydev.dk.content.RefCountingObserver;
 import com.lightydev.dk.util.Observable;
-import com.lightydev.dk.util.Observer;
+
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author =Troy= <Daniel Serdyukov>
@@ -39,26 +42,7 @@ public class DkImageView extends ImageView {
 
   private final SetErrorImageCmd mSetErrorImageCmd = new SetErrorImageCmd();
 
-  private final Observer<Bitmap> mObserver = new Observer<Bitmap>() {
-    @Override
-    public void onChange(Observable<Bitmap> observable, Bitmap bitmap) {
-      if (bitmap != null) {
-        observable.unregisterObserver(this);
-        mSetImageCmd.setBitmap(bitmap);
-        if (Looper.myLooper() != Looper.getMainLooper()) {
-          post(mSetImageCmd);
-        } else {
-          mSetImageCmd.run();
-        }
-      } else {
-        if (Looper.myLooper() != Looper.getMainLooper()) {
-          post(mSetErrorImageCmd);
-        } else {
-          mSetErrorImageCmd.run();
-        }
-      }
-    }
-  };
+  private final RefCountingObserver mObserver = new ImageObserver();
 
   private int mHwSize;
 
@@ -66,6 +50,12 @@ public class DkImageView extends ImageView {
 
   private Uri mImageUri;
 
+  private boolean mPending;
+
+  private int mPriority = ImageLoader.PRIORITY_VISIBLE;
+
+  private Bitmap mShownBitmap;
+
   public DkImageView(Context context) {
     this(context, null);
   }
@@ -87,14 +77,9 @@ public class DkImageView extends ImageView {
   public void loadImage(Uri uri) {
     if (mImageUri != uri) {
       unregisterObserver();
+      releaseImage();
       mImageUri = uri;
-      ImageLoader.registerObserver(mImageUri, mObserver);
-      if (mHwSize == 0 && mUseOptimalSize) {
-        final DisplayMetrics dm = getResources().getDisplayMetrics();
-        ImageLoader.loadImage(mImageUri, Math.max(dm.widthPixels, dm.heightPixels));
-      } else {
-        ImageLoader.loadImage(mImageUri, mHwSize);
-      }
+      requestImage();
     }
   }
 
@@ -110,10 +95,29 @@ public class DkImageView extends ImageView {
     mUseOptimalSize = useOptimalSize;
   }
 
+  /**
+   * Re-ranks the pending load of the current image, e.g. from the scroll listener of the list.
+   *
+   * @param priority one of the {@link ImageLoader} priority classes
+   * @since 2.4.0
+   */
+  public void setPriority(int priority) {
+    if (mPriority != priority) {
+      mPriority = priority;
+      if (mPending && mImageUri != null) {
+        ImageLoader.reprioritize(mImageUri, priority);
+      }
+    }
+  }
+
   public void setErrorResId(int resId) {
     mSetErrorImageCmd.setResId(resId);
   }
 
+  /**
+   * The bitmap is acquired from {@link BitmapPool} while this view shows it and released on rebind or
+   * detach, don't keep it beyond that.
+   */
   protected void onImageReady(Bitmap bitmap) {
     setImageBitmap(bitmap);
   }
@@ -122,31 +126,110 @@ public class DkImageView extends ImageView {
     setImageResource(errorResId);
   }
 
+  /**
+   * Restarts a load that was canceled when the view was detached before its image arrived.
+   */
+  @Override
+  protected void onAttachedToWindow() {
+    super.onAttachedToWindow();
+    if (mPending && mImageUri != null) {
+      requestImage();
+    }
+  }
+
+  /**
+   * Unregistering the last observer of the uri cancels its download and decode. The shown bitmap is
+   * released, so it is loaded again when the view comes back.
+   */
   @Override
   protected void onDetachedFromWindow() {
     unregisterObserver();
+    if (mShownBitmap != null) {
+      releaseImage();
+      mPending = true;
+    }
     super.onDetachedFromWindow();
   }
 
+  private void requestImage() {
+    mPending = true;
+    ImageLoader.registerObserver(mImageUri, mObserver);
+    if (mHwSize == 0 && mUseOptimalSize) {
+      final DisplayMetrics dm = getResources().getDisplayMetrics();
+      ImageLoader.loadImage(mImageUri, Math.max(dm.widthPixels, dm.heightPixels), mPriority);
+    } else {
+      ImageLoader.loadImage(mImageUri, mHwSize, mPriority);
+    }
+  }
+
   private void unregisterObserver() {
     if (mImageUri != null) {
       ImageLoader.unregisterObserver(mImageUri, mObserver);
     }
     removeCallbacks(mSetImageCmd);
+    BitmapPool.getInstance().release(mSetImageCmd.takeBitmap());
+  }
+
+  private void releaseImage() {
+    if (mShownBitmap != null) {
+      setImageDrawable(null);
+      BitmapPool.getInstance().release(mShownBitmap);
+      mShownBitmap = null;
+    }
   }
 
+  private final class ImageObserver implements RefCountingObserver {
+
+    @Override
+    public void onChange(Observable<Bitmap> observable, Bitmap bitmap) {
+      if (bitmap != null) {
+        observable.unregisterObserver(this);
+        BitmapPool.getInstance().acquire(bitmap);
+        BitmapPool.getInstance().release(mSetImageCmd.setBitmap(bitmap));
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+          post(mSetImageCmd);
+        } else {
+          mSetImageCmd.run();
+        }
+      } else {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+          post(mSetErrorImageCmd);
+        } else {
+          mSetErrorImageCmd.run();
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Holds a reference to the bitmap it is about to show.
+   */
   private final class SetImageCmd implements Runnable {
 
-    private Bitmap mBitmap;
+    private final AtomicReference<Bitmap> mBitmap = new AtomicReference<>();
 
-    public void setBitmap(Bitmap bitmap) {
-      mBitmap = bitmap;
+    /**
+     * @return the bitmap this replaces, the caller releases it
+     */
+    public Bitmap setBitmap(Bitmap bitmap) {
+      return mBitmap.getAndSet(bitmap);
+    }
+
+    public Bitmap takeBitmap() {
+      return mBitmap.getAndSet(null);
     }
 
     @Override
     public void run() {
       removeCallbacks(this);
-      onImageReady(mBitmap);
+      final Bitmap bitmap = takeBitmap();
+      if (bitmap != null) {
+        mPending = false;
+        BitmapPool.getInstance().release(mShownBitmap);
+        mShownBitmap = bitmap;
+        onImageReady(bitmap);
+      }
     }
 
   }
@@ -161,6 +244,7 @@ public class DkImageView extends ImageView {
 
     @Override
     public void run() {
+      mPending = false;
       if (mErrorResId > 0) {
         onImageError(mErrorResId);
       }
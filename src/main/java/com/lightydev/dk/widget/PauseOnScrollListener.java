@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012-2014 Daniel Serdyukov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightydev.dk.widget;
+
+import android.net.Uri;
+import android.widget.AbsListView;
+
+import com.lightydev.dk.content.ImageLoader;
+
+/**
+ * Pauses {@link ImageLoader} while the list is flinging, so rows that fly by don't start downloads
+ * and decodes. Given an {@link ImageUriProvider} it also re-ranks the images of the rows around the
+ * viewport with {@link ImageLoader#getViewportPriority(int, int, int)} whenever the visible range changes.
+ *
+ * @author =Troy= <Daniel Serdyukov>
+ * @since 2.4.0
+ */
+public class PauseOnScrollListener implements AbsListView.OnScrollListener {
+
+  private final AbsListView.OnScrollListener mDelegate;
+
+  private final ImageUriProvider mUriProvider;
+
+  private final boolean mPauseOnScroll;
+
+  private int mFirstVisibleItem = -1;
+
+  private int mVisibleItemCount;
+
+  public PauseOnScrollListener() {
+    this(false, null);
+  }
+
+  /**
+   * @param pauseOnScroll pause during touch scrolls too, not only while flinging
+   * @param delegate      listener that receives the scroll events as well, may be null
+   */
+  public PauseOnScrollListener(boolean pauseOnScroll, AbsListView.OnScrollListener delegate) {
+    this(pauseOnScroll, null, delegate);
+  }
+
+  /**
+   * @param uriProvider images of the list positions to re-rank on scroll, may be null
+   */
+  public PauseOnScrollListener(boolean pauseOnScroll, ImageUriProvider uriProvider,
+                               AbsListView.OnScrollListener delegate) {
+    mPauseOnScroll = pauseOnScroll;
+    mUriProvider = uriProvider;
+    mDelegate = delegate;
+  }
+
+  @Override
+  public void onScrollStateChanged(AbsListView view, int scrollState) {
+    if (scrollState == SCROLL_STATE_FLING || (scrollState == SCROLL_STATE_TOUCH_SCROLL && mPauseOnScroll)) {
+      ImageLoader.pause();
+    } else {
+      ImageLoader.resume();
+    }
+    if (mDelegate != null) {
+      mDelegate.onScrollStateChanged(view, scrollState);
+    }
+  }
+
+  @Override
+  public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+    if (mUriProvider != null && (firstVisibleItem != mFirstVisibleItem || visibleItemCount != mVisibleItemCount)) {
+      reprioritizeWindow(firstVisibleItem, visibleItemCount, totalItemCount);
+      mFirstVisibleItem = firstVisibleItem;
+      mVisibleItemCount = visibleItemCount;
+    }
+    if (mDelegate != null) {
+      mDelegate.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+    }
+  }
+
+  /**
+   * Ranks the rows around the new viewport, then demotes the rows around the previous one that are
+   * out of reach now.
+   */
+  private void reprioritizeWindow(int first, int count, int total) {
+    final int start = Math.max(0, first - count);
+    final int end = Math.min(total, first + 3 * count);
+    for (int position = start; position < end; ++position) {
+      reprioritize(position, first, count);
+    }
+    final int prevEnd = Math.min(total, mFirstVisibleItem + 3 * mVisibleItemCount);
+    for (int position = Math.max(0, mFirstVisibleItem - mVisibleItemCount); position < prevEnd; ++position) {
+      if (position < start || position >= end) {
+        reprioritize(position, first, count);
+      }
+    }
+  }
+
+  private void reprioritize(int position, int first, int count) {
+    final Uri uri = mUriProvider.getImageUri(position);
+    if (uri != null) {
+      ImageLoader.reprioritize(uri, ImageLoader.getViewportPriority(position, first, count));
+    }
+  }
+
+  /**
+   * Usually implemented by the list adapter.
+   */
+  public interface ImageUriProvider {
+
+    /**
+     * @return image shown at the list position or null
+     */
+    Uri getImageUri(int position);
+
+  }
+
+}